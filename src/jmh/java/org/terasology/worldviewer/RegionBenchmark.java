@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.chunks.ChunkConstants;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.env.TinyEnvironment;
+
+import version.GitVersion;
+
+import com.google.common.base.Stopwatch;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Measures the region generation throughput of world generators at different
+ * region sizes and thread counts. All facets of a region are computed, just as
+ * if all layers were visible. Results are written as JSON.
+ * @author Martin Steiger
+ */
+public final class RegionBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionBenchmark.class);
+
+    /**
+     * Regions are laid out in rows of this length to avoid repeating the same area
+     */
+    private static final int ROW_LENGTH = 64;
+
+    private final Options opts;
+
+    /**
+     * Ensures that every generated region covers a new area
+     */
+    private final AtomicInteger regionCounter = new AtomicInteger();
+
+    private RegionBenchmark(Options opts) {
+        this.opts = opts;
+    }
+
+    /**
+     * @param args see {@link Options}
+     * @throws Exception if the environment cannot be loaded or generation fails
+     */
+    public static void main(String[] args) throws Exception {
+        Options opts = new Options();
+        CmdLineParser parser = new CmdLineParser(opts);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+
+        TinyEnvironment.setup();
+
+        Report report = new RegionBenchmark(opts).run();
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        Files.createDirectories(opts.outFile.getAbsoluteFile().toPath().getParent());
+        try (Writer writer = Files.newBufferedWriter(opts.outFile.toPath(), StandardCharsets.UTF_8)) {
+            gson.toJson(report, writer);
+        }
+        logger.info("Results written to {}", opts.outFile.getAbsolutePath());
+    }
+
+    private Report run() throws InterruptedException, ExecutionException {
+        Report report = new Report();
+
+        List<String> classNames = new ArrayList<>();
+        if (opts.worldGens != null) {
+            for (String name : opts.worldGens.split(",")) {
+                classNames.add(name.trim());
+            }
+        } else {
+            for (Class<?> clazz : WorldGenerators.findOnClasspath()) {
+                classNames.add(clazz.getName());
+            }
+        }
+
+        for (String className : classNames) {
+            WorldGenerator worldGen = WorldGenerators.createWorldGenerator(className);
+            if (worldGen == null) {
+                logger.warn("Could not create world generator {}", className);
+                continue;
+            }
+            worldGen.setWorldSeed(opts.seed);
+            worldGen.initialize();
+
+            for (int tileSize : parseInts(opts.tileSizes)) {
+                for (int vertChunks : parseInts(opts.vertChunks)) {
+                    double singleThreaded = 0;
+                    for (int threads = 1; threads <= opts.maxThreads; threads++) {
+                        Result result = measure(worldGen, tileSize, vertChunks, threads);
+                        if (threads == 1) {
+                            singleThreaded = result.regionsPerSecond;
+                        }
+                        result.efficiency = result.regionsPerSecond / (threads * singleThreaded);
+                        report.results.add(result);
+
+                        logger.info("{} {}x{}x{} - {} threads: {} regions/s ({}% efficiency)",
+                                result.worldGen, tileSize, vertChunks * ChunkConstants.SIZE_Y, tileSize, threads,
+                                String.format("%.2f", result.regionsPerSecond),
+                                String.format("%.0f", result.efficiency * 100));
+                    }
+                }
+            }
+        }
+
+        return report;
+    }
+
+    private Result measure(WorldGenerator worldGen, int tileSize, int vertChunks, int threads)
+            throws InterruptedException, ExecutionException {
+        World world = worldGen.getWorld();
+        Collection<Class<? extends WorldFacet>> facets = world.getAllFacets();
+        int height = vertChunks * ChunkConstants.SIZE_Y;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // warm-up is not measured, but uses the same threads
+            generate(pool, world, facets, tileSize, height, opts.warmupRegions);
+
+            Stopwatch sw = Stopwatch.createStarted();
+            generate(pool, world, facets, tileSize, height, opts.regions);
+            double seconds = sw.elapsed(TimeUnit.NANOSECONDS) * 1e-9;
+
+            Result result = new Result();
+            result.worldGen = worldGen.getClass().getName();
+            result.tileSize = tileSize;
+            result.vertChunks = vertChunks;
+            result.threads = threads;
+            result.regions = opts.regions;
+            result.seconds = seconds;
+            result.regionsPerSecond = opts.regions / seconds;
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void generate(ExecutorService pool, World world, Collection<Class<? extends WorldFacet>> facets,
+            int tileSize, int height, int count) throws InterruptedException, ExecutionException {
+
+        List<Future<?>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int idx = regionCounter.getAndIncrement();
+            Vector3i min = new Vector3i((idx % ROW_LENGTH) * tileSize, 0, (idx / ROW_LENGTH) * tileSize);
+            Region3i area = Region3i.createFromMinAndSize(min, new Vector3i(tileSize, height, tileSize));
+            futures.add(pool.submit(() -> {
+                Region region = world.getWorldData(area);
+                for (Class<? extends WorldFacet> facetClass : facets) {
+                    region.getFacet(facetClass);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static List<Integer> parseInts(String text) {
+        List<Integer> result = new ArrayList<>();
+        for (String part : text.split(",")) {
+            result.add(Integer.valueOf(part.trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Command-line options of the benchmark
+     */
+    static class Options {
+
+        @Option(name = "-worldGens", metaVar = "<classes>", usage = "Comma-separated world generator classes (default: all)")
+        String worldGens;
+
+        @Option(name = "-seed", metaVar = "<string>", usage = "The seed value to use")
+        String seed = "benchmark";
+
+        @Option(name = "-tileSizes", metaVar = "<sizes>", usage = "Comma-separated region sizes in blocks")
+        String tileSizes = "64,128,256";
+
+        @Option(name = "-vertChunks", metaVar = "<counts>", usage = "Comma-separated numbers of vertical chunks")
+        String vertChunks = "1,4";
+
+        @Option(name = "-threads", metaVar = "<n>", usage = "The max. number of threads")
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+
+        @Option(name = "-regions", metaVar = "<n>", usage = "The number of measured regions per run")
+        int regions = 64;
+
+        @Option(name = "-warmup", metaVar = "<n>", usage = "The number of regions that are generated before measuring")
+        int warmupRegions = 16;
+
+        @Option(name = "-out", metaVar = "<file>", usage = "The JSON result file")
+        File outFile = new File("build/reports/region-benchmark.json");
+    }
+
+    /**
+     * The JSON root element
+     */
+    private static class Report {
+        private final String version = GitVersion.getVersion();
+        private final String javaVersion = System.getProperty("java.version");
+        private final int processors = Runtime.getRuntime().availableProcessors();
+        private final Date date = new Date();
+        private final List<Result> results = new ArrayList<>();
+    }
+
+    /**
+     * One measurement
+     */
+    private static class Result {
+        private String worldGen;
+        private int tileSize;
+        private int vertChunks;
+        private int threads;
+        private int regions;
+        private double seconds;
+        private double regionsPerSecond;
+
+        /**
+         * The throughput relative to perfect linear scaling of the single-threaded throughput
+         */
+        private double efficiency;
+    }
+}
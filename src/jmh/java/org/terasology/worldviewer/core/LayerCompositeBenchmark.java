@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.worldviewer.render.AdditiveComposite;
+
+/**
+ * Measures how fast a layer buffer is composed into a tile, depending on the
+ * color model of the buffer and the composite of the layer.
+ * @author Martin Steiger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LayerCompositeBenchmark {
+
+    /**
+     * The number of distinct colors in the layer buffer
+     */
+    @Param({"12", "200"})
+    private int colors;
+
+    /**
+     * Whether the layer buffer is palette-indexed
+     */
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    @Param({"alpha", "additive"})
+    private String composite;
+
+    private BufferedImage buffer;
+    private BufferedImage tile;
+    private Graphics2D g;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(1234);
+        int[] palette = new int[colors];
+        for (int i = 1; i < colors; i++) {
+            palette[i] = 0xFF000000 | random.nextInt();
+        }
+
+        buffer = new BufferedImage(TilePipeline.TILE_SIZE_X, TilePipeline.TILE_SIZE_Y, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < buffer.getHeight(); y++) {
+            for (int x = 0; x < buffer.getWidth(); x++) {
+                // areas of the same color, like a biome map
+                buffer.setRGB(x, y, palette[((x / 16) * 7 + (y / 16) * 3) % colors]);
+            }
+        }
+
+        if (indexed) {
+            buffer = PaletteImages.compact(buffer);
+        }
+
+        Composite comp = "alpha".equals(composite) ? AlphaComposite.SrcOver : AdditiveComposite.INSTANCE;
+        tile = new BufferedImage(TilePipeline.TILE_SIZE_X, TilePipeline.TILE_SIZE_Y, BufferedImage.TYPE_INT_RGB);
+        g = tile.createGraphics();
+        g.setComposite(comp);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage compose() {
+        g.drawImage(buffer, 0, 0, null);
+        return tile;
+    }
+}
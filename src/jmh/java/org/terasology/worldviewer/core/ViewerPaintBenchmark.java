@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.worldviewer.core;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.math.TeraMath;
+import org.terasology.math.geom.Vector2i;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.WorldGenerators;
+import org.terasology.worldviewer.config.ViewConfig;
+import org.terasology.worldviewer.env.TinyEnvironment;
+import org.terasology.worldviewer.layers.FacetLayer;
+
+import com.google.common.math.IntMath;
+
+/**
+ * Measures {@link Viewer#paint(java.awt.Graphics)} for a fixed viewport whose tiles
+ * are all cached and up-to-date, so no tiles are scheduled. Run it with <code>-prof gc</code>
+ * (the default of the jmh task) to see the allocation rate per painted frame. Painting
+ * still allocates a few objects per frame, such as the visible rectangles and the graphics
+ * of the back buffer, but nothing per visible tile.
+ * @author Martin Steiger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ViewerPaintBenchmark {
+
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final String SEED = "paint";
+
+    /**
+     * The camera zoom factor - it also determines the pyramid level that is painted
+     */
+    @Param({"1", "0.4", "0.125"})
+    private float zoom;
+
+    /**
+     * The world generator class or <code>*</code> for the first one on the classpath.
+     * It is required to set up the pipeline, but no world data is generated.
+     */
+    @Param("*")
+    private String worldGen;
+
+    private TilePipeline pipeline;
+    private Viewer viewer;
+    private BufferedImage canvas;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TinyEnvironment.setup();
+
+        String className = worldGen;
+        if ("*".equals(className)) {
+            List<Class<?>> classes = new ArrayList<>(WorldGenerators.findOnClasspath());
+            classes.sort(Comparator.comparing(Class::getName));
+            className = classes.get(0).getName();
+        }
+        WorldGenerator wg = WorldGenerators.createWorldGenerator(className);
+        wg.setWorldSeed(SEED);
+        wg.initialize();
+
+        // no layers and no off-heap or disk cache - only cached tile images are drawn
+        List<FacetLayer> layers = Collections.emptyList();
+        pipeline = new TilePipeline(wg, layers, 64, 512, 0, null);
+
+        ViewConfig viewConfig = new ViewConfig();
+        viewConfig.setCamPos(new Vector2i(0, 0));
+        viewConfig.setZoomFactor(zoom);
+        fillViewport(viewConfig);
+
+        viewer = new Viewer(pipeline, viewConfig, 0);
+        viewer.setSize(WIDTH, HEIGHT);
+
+        canvas = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = canvas.createGraphics();
+    }
+
+    /**
+     * Stores the same image for all tiles of the visible level (plus a margin of one tile).
+     * The level is picked the same way as in the viewer.
+     */
+    private void fillViewport(ViewConfig viewConfig) {
+        int level = TeraMath.clamp((int) Math.floor(-Math.log(zoom) / Math.log(2) + 1e-6), 0, TilePipeline.MAX_LEVEL);
+        int sizeX = TilePipeline.TILE_SIZE_X << level;
+        int sizeY = TilePipeline.TILE_SIZE_Y << level;
+        int halfW = (int) (WIDTH / zoom) / 2;
+        int halfH = (int) (HEIGHT / zoom) / 2;
+        Vector2i camPos = viewConfig.getCamPos();
+
+        int minX = IntMath.divide(camPos.getX() - halfW, sizeX, RoundingMode.FLOOR) - 1;
+        int minY = IntMath.divide(camPos.getY() - halfH, sizeY, RoundingMode.FLOOR) - 1;
+        int maxX = IntMath.divide(camPos.getX() + halfW, sizeX, RoundingMode.CEILING) + 1;
+        int maxY = IntMath.divide(camPos.getY() + halfH, sizeY, RoundingMode.CEILING) + 1;
+
+        BufferedImage image = new BufferedImage(TilePipeline.TILE_SIZE_X, TilePipeline.TILE_SIZE_Y, BufferedImage.TYPE_INT_RGB);
+        int stamp = pipeline.getGeneration();
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                pipeline.putImage(new TileKey(level, x, y), image, stamp);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+        viewer.close();
+        pipeline.close();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        viewer.paint(graphics);
+        return canvas;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.layers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.WorldFacet;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * A snapshot of the facets of a generated region that can be stored in a file.
+ * Facets are not serializable, so their object graphs are written through Kryo.
+ * @author Martin Steiger
+ */
+public final class FacetFixture {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacetFixture.class);
+
+    private static final int VERSION = 1;
+
+    private final String name;
+    private final Region3i area;
+    private final Map<Class<? extends WorldFacet>, WorldFacet> facets;
+
+    /**
+     * @param name a descriptive name (e.g. the world generator)
+     * @param area the region area
+     * @param facets the computed facets of the region
+     */
+    public FacetFixture(String name, Region3i area, Map<Class<? extends WorldFacet>, WorldFacet> facets) {
+        this.name = name;
+        this.area = area;
+        this.facets = Collections.unmodifiableMap(new LinkedHashMap<>(facets));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<Class<? extends WorldFacet>> getFacetClasses() {
+        return facets.keySet();
+    }
+
+    /**
+     * @return a region that provides the stored facets only
+     */
+    public Region asRegion() {
+        return new Region() {
+
+            @Override
+            public <T extends WorldFacet> T getFacet(Class<T> dataType) {
+                return dataType.cast(facets.get(dataType));
+            }
+
+            @Override
+            public Region3i getRegion() {
+                return area;
+            }
+        };
+    }
+
+    /**
+     * Facets that cannot be serialized are skipped.
+     * @param file the target file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Kryo kryo = createKryo();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (Entry<Class<? extends WorldFacet>, WorldFacet> entry : facets.entrySet()) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (Output output = new Output(baos)) {
+                kryo.writeClassAndObject(output, entry.getValue());
+            } catch (KryoException e) {
+                logger.warn("Could not serialize facet {} - skipping", entry.getKey().getName(), e);
+                continue;
+            }
+            entries.put(entry.getKey().getName(), baos.toByteArray());
+        }
+
+        try (OutputStream os = Files.newOutputStream(file);
+             DataOutputStream dos = new DataOutputStream(os)) {
+            dos.writeInt(VERSION);
+            dos.writeUTF(name);
+            dos.writeInt(area.minX());
+            dos.writeInt(area.minY());
+            dos.writeInt(area.minZ());
+            dos.writeInt(area.maxX());
+            dos.writeInt(area.maxY());
+            dos.writeInt(area.maxZ());
+            dos.writeInt(entries.size());
+            for (Entry<String, byte[]> entry : entries.entrySet()) {
+                dos.writeUTF(entry.getKey());
+                dos.writeInt(entry.getValue().length);
+                dos.write(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param file the fixture file
+     * @return the fixture
+     * @throws IOException if the file cannot be read or has a different version
+     */
+    public static FacetFixture read(Path file) throws IOException {
+        Kryo kryo = createKryo();
+        try (InputStream is = Files.newInputStream(file);
+             DataInputStream dis = new DataInputStream(is)) {
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported fixture version " + version + " in " + file);
+            }
+            String name = dis.readUTF();
+            Vector3i min = new Vector3i(dis.readInt(), dis.readInt(), dis.readInt());
+            Vector3i max = new Vector3i(dis.readInt(), dis.readInt(), dis.readInt());
+            int count = dis.readInt();
+            Map<Class<? extends WorldFacet>, WorldFacet> facets = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String className = dis.readUTF();
+                byte[] data = new byte[dis.readInt()];
+                dis.readFully(data);
+                try (Input input = new Input(data)) {
+                    Class<? extends WorldFacet> facetClass = Class.forName(className).asSubclass(WorldFacet.class);
+                    facets.put(facetClass, (WorldFacet) kryo.readClassAndObject(input));
+                } catch (ClassNotFoundException | KryoException e) {
+                    throw new IOException("Could not read facet " + className + " from " + file, e);
+                }
+            }
+            return new FacetFixture(name, Region3i.createFromMinMax(min, max), facets);
+        }
+    }
+
+    private static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        // facets and their members usually don't have default constructors
+        kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        return kryo;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + facets.size() + " facets";
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.layers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.chunks.ChunkConstants;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.FacetLayers;
+import org.terasology.worldviewer.WorldGenerators;
+import org.terasology.worldviewer.core.TilePipeline;
+import org.terasology.worldviewer.env.TinyEnvironment;
+
+/**
+ * Generates one tile-sized region per world generator and stores all facets
+ * that can be visualized by a layer as {@link FacetFixture}.
+ * @author Martin Steiger
+ */
+public final class FacetFixtureGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacetFixtureGenerator.class);
+
+    private static final String SEED = "fixture";
+
+    private FacetFixtureGenerator() {
+        // no instances
+    }
+
+    /**
+     * @param args the target folder, optionally followed by world generator class names (default: all)
+     * @throws IOException if the environment cannot be loaded or a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FacetFixtureGenerator <folder> [<worldGenClass> ...]");
+            return;
+        }
+
+        TinyEnvironment.setup();
+
+        Path folder = Paths.get(args[0]);
+        Files.createDirectories(folder);
+
+        List<String> classNames = new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        if (classNames.isEmpty()) {
+            for (Class<?> clazz : WorldGenerators.findOnClasspath()) {
+                classNames.add(clazz.getName());
+            }
+        }
+
+        for (String className : classNames) {
+            WorldGenerator worldGen = WorldGenerators.createWorldGenerator(className);
+            if (worldGen == null) {
+                logger.warn("Could not create world generator {}", className);
+                continue;
+            }
+            worldGen.setWorldSeed(SEED);
+            worldGen.initialize();
+
+            FacetFixture fixture = createFixture(worldGen);
+            Path file = folder.resolve(worldGen.getClass().getSimpleName() + ".fixture");
+            fixture.write(file);
+            logger.info("Written {} to {}", fixture, file);
+        }
+    }
+
+    private static FacetFixture createFixture(WorldGenerator worldGen) {
+        // the same region size as a full-resolution tile
+        int height = 4 * ChunkConstants.SIZE_Y;
+        Vector3i size = new Vector3i(TilePipeline.TILE_SIZE_X, height, TilePipeline.TILE_SIZE_Y);
+        Region3i area = Region3i.createFromMinAndSize(new Vector3i(0, 0, 0), size);
+
+        World world = worldGen.getWorld();
+        Region region = world.getWorldData(area);
+
+        Map<Class<? extends WorldFacet>, WorldFacet> facets = new LinkedHashMap<>();
+        for (Class<? extends WorldFacet> facetClass : world.getAllFacets()) {
+            if (!FacetLayers.getLayers(facetClass).isEmpty()) {
+                facets.put(facetClass, region.getFacet(facetClass));
+            }
+        }
+
+        return new FacetFixture(worldGen.getClass().getSimpleName(), area, facets);
+    }
+}
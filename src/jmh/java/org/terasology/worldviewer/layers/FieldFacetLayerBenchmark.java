@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.layers;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.base.FieldFacet2D;
+import org.terasology.worldviewer.core.TilePipeline;
+
+/**
+ * Compares {@link FieldFacetLayer#render(BufferedImage, Region)} to a loop that only
+ * reads the field values and writes the pixels. The latter is the bound given by memory
+ * access. Both scores are the time per pixel. The fixture folder is taken from the
+ * system property <code>worldviewer.fixtures</code>.
+ * @author Martin Steiger
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldFacetLayerBenchmark {
+
+    private static final int PIXELS = TilePipeline.TILE_SIZE_X * TilePipeline.TILE_SIZE_Y;
+
+    private FieldFacetLayer layer;
+    private Region region;
+    private BufferedImage image;
+    private int[] pixels;
+    private float[] values;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path folder = Paths.get(System.getProperty("worldviewer.fixtures", "build/jmh-fixtures"));
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*.fixture")) {
+            for (Path file : files) {
+                FacetFixture fixture = FacetFixture.read(file);
+                for (Class<? extends WorldFacet> facetClass : fixture.getFacetClasses()) {
+                    if (FieldFacet2D.class.isAssignableFrom(facetClass) && layer == null) {
+                        layer = new FieldFacetLayer(facetClass.asSubclass(FieldFacet2D.class), 0, 1);
+                        region = fixture.asRegion();
+                    }
+                }
+            }
+        }
+
+        if (layer == null) {
+            throw new IllegalStateException("No fixture with a field facet in " + folder.toAbsolutePath());
+        }
+
+        image = new BufferedImage(TilePipeline.TILE_SIZE_X, TilePipeline.TILE_SIZE_Y, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        FieldFacet2D facet = region.getFacet(layer.getFacetClass().asSubclass(FieldFacet2D.class));
+        values = new float[PIXELS];
+        for (int z = 0; z < TilePipeline.TILE_SIZE_Y; z++) {
+            for (int x = 0; x < TilePipeline.TILE_SIZE_X; x++) {
+                values[z * TilePipeline.TILE_SIZE_X + x] = facet.get(x, z);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public BufferedImage render() {
+        // layers always render into empty buffers
+        Arrays.fill(pixels, 0);
+        layer.render(image, region);
+        return image;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIXELS)
+    public int[] memoryBaseline() {
+        Arrays.fill(pixels, 0);
+        for (int i = 0; i < PIXELS; i++) {
+            pixels[i] |= Float.floatToRawIntBits(values[i]);
+        }
+        return pixels;
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.terasology.worldviewer;
 
+import java.io.File;
+import java.nio.file.Path;
+
 import org.kohsuke.args4j.Option;
 
 
@@ -36,4 +39,44 @@ public class CmdLineConfigs {
 
     @Option(name = "-seed", metaVar = "<string>", usage = "The seed value to use")
     String seed;
+
+    @Option(name = "-regionCache", metaVar = "<MB>", usage = "The memory budget for cached world regions")
+    int regionCacheMB = 1024;
+
+    @Option(name = "-imageCache", metaVar = "<MB>", usage = "The memory budget for cached tile images")
+    int imageCacheMB = 256;
+
+    @Option(name = "-offHeapCache", metaVar = "<MB>", usage = "The memory budget for tile images outside of the Java heap (0 to disable)")
+    int offHeapCacheMB = 512;
+
+    @Option(name = "-diskCache", metaVar = "<dir>", usage = "The folder for persistent tile images (default: disabled)")
+    File diskCacheDir;
+
+    @Option(name = "-prefetch", metaVar = "<tiles>", usage = "The max. number of tiles that are rendered ahead of the camera movement")
+    int prefetchTiles = 16;
+
+    @Option(name = "-render", usage = "render an image without user interface and exit")
+    boolean render;
+
+    @Option(name = "-serve", metaVar = "<port>", usage = "serve map tiles at http://localhost:<port>/{z}/{x}/{y}.png without user interface")
+    Integer servePort;
+
+    @Option(name = "-area", metaVar = "<x,z,width,height>", usage = "The world area to render (in blocks)")
+    String area = "-1024,-1024,2048,2048";
+
+    @Option(name = "-zoom", metaVar = "<factor>", usage = "The number of pixels per block of the rendered image")
+    float zoom = 0.5f;
+
+    @Option(name = "-layers", metaVar = "<names>", usage = "Comma-separated names of the layers to render (default: as configured)")
+    String layers;
+
+    @Option(name = "-out", metaVar = "<file>", usage = "The PNG file for the rendered image")
+    File outFile = new File("world.png");
+
+    /**
+     * @return the folder for persistent tile images or <code>null</code> if disabled
+     */
+    Path getDiskCacheDir() {
+        return diskCacheDir != null ? diskCacheDir.toPath() : null;
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.core.world.generator.facets.BiomeFacet;
+import org.terasology.core.world.generator.facets.FloraFacet;
+import org.terasology.core.world.generator.facets.TreeFacet;
+import org.terasology.core.world.generator.facets.World2dPreviewFacet;
+import org.terasology.polyworld.biome.WhittakerBiomeFacet;
+import org.terasology.polyworld.graph.GraphFacet;
+import org.terasology.polyworld.moisture.MoistureModelFacet;
+import org.terasology.polyworld.rivers.RiverModelFacet;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.base.FieldFacet2D;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.config.Config;
+import org.terasology.worldviewer.layers.CoreBiomeFacetLayer;
+import org.terasology.worldviewer.layers.FacetLayer;
+import org.terasology.worldviewer.layers.FieldFacetLayer;
+import org.terasology.worldviewer.layers.FloraFacetLayer;
+import org.terasology.worldviewer.layers.GraphFacetLayer;
+import org.terasology.worldviewer.layers.MoistureModelFacetLayer;
+import org.terasology.worldviewer.layers.PreviewFacetLayer;
+import org.terasology.worldviewer.layers.RiverModelFacetLayer;
+import org.terasology.worldviewer.layers.TreeFacetLayer;
+import org.terasology.worldviewer.layers.WhittakerBiomeFacetLayer;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Creates the facet layers for a world generator
+ * @author Martin Steiger
+ */
+public final class FacetLayers {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacetLayers.class);
+
+    private FacetLayers() {
+        // no instances
+    }
+
+    /**
+     * Creates default layers for all facets first and then replaces
+     * them with those from the config (if available).
+     * @param worldGen the world generator
+     * @param config the config that contains stored layers
+     * @return a thread-safe list of layers
+     */
+    public static List<FacetLayer> createLayers(WorldGenerator worldGen, Config config) {
+        List<FacetLayer> loadedLayers = Lists.newArrayList();
+
+        // Fill it with default values first
+        for (Class<? extends WorldFacet> facet : worldGen.getWorld().getAllFacets()) {
+            loadedLayers.addAll(getLayers(facet));
+        }
+
+        // Then try to replace them with those from the config file
+        try {
+            loadedLayers = config.loadLayers(worldGen.getUri(), loadedLayers);
+        } catch (RuntimeException e) {
+            logger.warn("Could not load layers - using default", e);
+        }
+
+        return Lists.newCopyOnWriteArrayList(loadedLayers);
+    }
+
+    /**
+     * @param facetClass the facet class
+     * @return new layers with default settings that visualize the given facet (possibly empty)
+     */
+    @SuppressWarnings("unchecked")
+    public static Collection<FacetLayer> getLayers(Class<? extends WorldFacet> facetClass) {
+
+        List<FacetLayer> result = Lists.newArrayList();
+
+        Map<Class<?>, Function<Class<?>, FacetLayer>> mapping = Maps.newLinkedHashMap();
+
+        mapping.put(World2dPreviewFacet.class,
+                clazz -> new PreviewFacetLayer());
+
+        mapping.put(FieldFacet2D.class,
+                clazz -> new FieldFacetLayer((Class<FieldFacet2D>) clazz, 0, 5));
+
+        mapping.put(WhittakerBiomeFacet.class,
+                clazz -> new WhittakerBiomeFacetLayer());
+
+        mapping.put(BiomeFacet.class,
+                clazz -> new CoreBiomeFacetLayer());
+
+        mapping.put(MoistureModelFacet.class,
+                clazz -> new MoistureModelFacetLayer());
+
+        mapping.put(RiverModelFacet.class,
+                clazz -> new RiverModelFacetLayer());
+
+        mapping.put(GraphFacet.class,
+                clazz -> new GraphFacetLayer());
+
+        mapping.put(FloraFacet.class,
+                clazz -> new FloraFacetLayer());
+
+        mapping.put(TreeFacet.class,
+                clazz -> new TreeFacetLayer());
+
+        for (Class<?> clazz : mapping.keySet()) {
+            if (clazz.isAssignableFrom(facetClass)) {
+                result.add(mapping.get(clazz).apply(facetClass));
+            }
+        }
+
+//        if (ObjectFacet2D.class.isAssignableFrom(facetClass)) {
+//            Class<ObjectFacet2D<Object>> cast = (Class<ObjectFacet2D<Object>>) facetClass;
+//            result.add(new NominalFacetLayer<Object>(cast, new RandomObjectColors()));
+//        }
+
+        if (result.isEmpty()) {
+            logger.warn("No layers found for facet {}", facetClass.getName());
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.worldviewer.core.FacetDependencyGraph;
+import org.terasology.worldviewer.layers.FacetLayer;
+
+/**
+ * The data of a zoomed-out tile that samples only every n-th row of blocks. The engine can only
+ * generate facets for contiguous regions, so every n-th row is generated as a separate full-resolution
+ * region that is one block deep. This reduces the number of generated blocks by the scale factor n
+ * (not by n&sup2;), and every row has its own provider setup, including facet borders.
+ * <p>
+ * The rows are not combined into facets for the whole area, so this is not a {@link org.terasology.world.generation.Region}.
+ * Layers are rendered row by row instead: pixels that a layer writes directly are sampled at every
+ * n-th block, while shapes that a layer draws are scaled to the tile and clipped to the pixel row
+ * of the region row, so that they keep their geometry.
+ * </p>
+ * @author Martin Steiger
+ */
+public class SampledRegion implements TileRegion {
+
+    private final Region3i area;
+    private final int scale;
+    private final List<ThreadSafeRegion> rows;
+
+    /**
+     * @param world the world to sample
+     * @param area the area in world coordinates - its size must be a multiple of the scale
+     * @param scale the number of blocks per sample
+     */
+    public SampledRegion(World world, Region3i area, int scale) {
+        this(area, scale, createRows(world, area, scale));
+    }
+
+    private SampledRegion(Region3i area, int scale, List<ThreadSafeRegion> rows) {
+        this.area = area;
+        this.scale = scale;
+        this.rows = rows;
+    }
+
+    private static List<ThreadSafeRegion> createRows(World world, Region3i area, int scale) {
+        int count = area.sizeZ() / scale;
+        Vector3i rowSize = new Vector3i(area.sizeX(), area.sizeY(), 1);
+        List<ThreadSafeRegion> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Vector3i rowMin = new Vector3i(area.minX(), area.minY(), area.minZ() + i * scale);
+            Region3i rowArea = Region3i.createFromMinAndSize(rowMin, rowSize);
+            rows.add(new ThreadSafeRegion(world.getWorldData(rowArea)));
+        }
+        return rows;
+    }
+
+    @Override
+    public SampledRegion retain(World world, Predicate<Class<? extends WorldFacet>> filter, FacetDependencyGraph graph) {
+        List<ThreadSafeRegion> retained = new ArrayList<>(rows.size());
+        for (ThreadSafeRegion row : rows) {
+            retained.add(row.retain(world, filter, graph));
+        }
+        return new SampledRegion(area, scale, retained);
+    }
+
+    /**
+     * @return the number of blocks per sample along one axis
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the full-resolution rows, one for every n-th row of blocks
+     */
+    public List<ThreadSafeRegion> getRows() {
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * This method does not block, even if a facet is being computed.
+     * @param dataType the facet class
+     * @return true if the facet has been computed for all rows
+     */
+    @Override
+    public boolean isComputed(Class<? extends WorldFacet> dataType) {
+        for (ThreadSafeRegion row : rows) {
+            if (!row.isComputed(dataType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes a facet for all rows (unless it is known already)
+     * @param dataType the facet class
+     */
+    @Override
+    public void computeFacet(Class<? extends WorldFacet> dataType) {
+        for (ThreadSafeRegion row : rows) {
+            row.getFacet(dataType);
+        }
+    }
+
+    /**
+     * Renders a layer row by row. Pixels that the layer writes are sampled at every n-th block,
+     * shapes are drawn into the pixel row directly.
+     * @param layer the layer to render
+     * @param img the target image - its size must match the number of samples and it must store pixels as ints
+     */
+    @Override
+    public void render(FacetLayer layer, BufferedImage img) {
+        int width = img.getWidth();
+        RowCanvas canvas = new RowCanvas(img, area.sizeX(), scale);
+        int[] rowPixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        for (int z = 0; z < rows.size(); z++) {
+            // layers expect empty buffers
+            Arrays.fill(rowPixels, 0);
+            canvas.band = z;
+            layer.render(canvas, rows.get(z));
+            for (int x = 0; x < width; x++) {
+                int px = rowPixels[x * scale];
+                // pixels that were not written must not erase shapes that were drawn
+                if (px != 0) {
+                    pixels[z * width + x] = px;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Region3i getRegion() {
+        return area;
+    }
+
+    /**
+     * A full-resolution row image for layers that write pixels directly. Graphics that layers create
+     * draw into the sampled image instead. They map the region row to the current pixel row, so that
+     * the center of the sampled block is the pixel center, and they are clipped to that pixel row.
+     */
+    private static final class RowCanvas extends BufferedImage {
+
+        private final BufferedImage target;
+        private final int scale;
+
+        /**
+         * The pixel row in the target image
+         */
+        private int band;
+
+        RowCanvas(BufferedImage target, int width, int scale) {
+            super(width, 1, target.getType());
+            this.target = target;
+            this.scale = scale;
+        }
+
+        @Override
+        public Graphics2D createGraphics() {
+            Graphics2D g = target.createGraphics();
+            // shapes of the row are thinner than a pixel - normalization would move them off the pixel center
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.clipRect(0, band, target.getWidth(), 1);
+            g.translate(0.5, band + 0.5);
+            g.scale(1.0 / scale, 1.0 / scale);
+            g.translate(-0.5, -0.5);
+            return g;
+        }
+    }
+}
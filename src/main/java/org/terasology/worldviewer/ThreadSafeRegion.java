@@ -16,30 +16,199 @@
 
 package org.terasology.worldviewer;
 
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
 import org.terasology.math.Region3i;
+import org.terasology.world.generation.GeneratingRegion;
 import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
 import org.terasology.world.generation.WorldFacet;
+import org.terasology.worldviewer.core.FacetDependencyGraph;
+import org.terasology.worldviewer.jfr.JfrEvents;
+import org.terasology.worldviewer.jfr.JfrEvents.Span;
+import org.terasology.worldviewer.layers.FacetLayer;
+
+import com.google.common.base.Throwables;
 
 /**
- * A thread-safe wrapping class for {@link Region} that
- * synchronizes access to {@link #getFacet(Class)}. It assumes that
- * {@link #getRegion()} does not need synchronizing.
+ * A thread-safe wrapping class for {@link Region} that memoizes facets per facet class.
+ * The first caller of {@link #getFacet(Class)} computes a facet while other callers
+ * of the same facet wait for the result. Facets that have been computed already are
+ * returned without locking. It assumes that {@link #getRegion()} does not need synchronizing.
+ * <p>
+ * Computations of different facets of the same region are serialized by a single lock.
+ * The underlying engine region is not thread-safe: its facet maps and its set of processed
+ * providers are shared by all provider chains, and chains overlap through required facets.
+ * A lock per chain would therefore not be safe. Facets are computed in parallel only for
+ * different regions (i.e. different tiles).
+ * </p>
  * @author Martin Steiger
  */
-public class ThreadSafeRegion implements Region {
+public class ThreadSafeRegion implements Region, TileRegion {
 
     private final Region base;
 
+    /**
+     * Guards all access to the underlying region - it serializes all facet computations of this region
+     */
+    private final Object baseLock = new Object();
+
+    /**
+     * All facets that have been requested so far (possibly still being computed)
+     */
+    private final ConcurrentMap<Class<? extends WorldFacet>, CompletableFuture<WorldFacet>> facets = new ConcurrentHashMap<>();
+
     /**
      * @param base the underlying original region this implementation uses
      */
     public ThreadSafeRegion(Region base) {
+        this(base, Collections.emptyMap());
+    }
+
+    /**
+     * The retained facets are also handed to the underlying region (if it is a
+     * {@link GeneratingRegion}), so that facet providers can use them as input.
+     * @param base the underlying original region this implementation uses
+     * @param retained facets of an earlier region of the same area that are still valid
+     */
+    public ThreadSafeRegion(Region base, Map<Class<? extends WorldFacet>, WorldFacet> retained) {
         this.base = base;
+
+        for (Entry<Class<? extends WorldFacet>, WorldFacet> entry : retained.entrySet()) {
+            facets.put(entry.getKey(), CompletableFuture.completedFuture(entry.getValue()));
+            if (base instanceof GeneratingRegion) {
+                inject((GeneratingRegion) base, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static <T extends WorldFacet> void inject(GeneratingRegion region, Class<T> type, WorldFacet facet) {
+        region.setRegionFacet(type, type.cast(facet));
+    }
+
+    @Override
+    public <T extends WorldFacet> T getFacet(Class<T> dataType) {
+        CompletableFuture<WorldFacet> future = facets.get(dataType);
+        if (future == null) {
+            CompletableFuture<WorldFacet> created = new CompletableFuture<>();
+            future = facets.putIfAbsent(dataType, created);
+            if (future == null) {
+                return dataType.cast(compute(dataType, created));
+            }
+        }
+
+        try {
+            return dataType.cast(future.join());
+        } catch (CompletionException e) {
+            // the exception has been thrown in a different thread
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private WorldFacet compute(Class<? extends WorldFacet> dataType, CompletableFuture<WorldFacet> future) {
+        WorldFacet facet;
+        try {
+            Region3i area = base.getRegion();
+            synchronized (baseLock) {
+                // the event starts after the lock is acquired, so that waiting is not reported as generation time
+                Span event = JfrEvents.facetGeneration(dataType, area.minX(), area.minZ(),
+                        area.maxX() - area.minX() + 1, area.maxZ() - area.minZ() + 1);
+                facet = base.getFacet(dataType);
+                event.end();
+            }
+        } catch (RuntimeException | Error e) {
+            // don't memoize failures - the next caller tries again
+            facets.remove(dataType, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+
+        if (facet == null) {
+            // unknown facets are not memoized
+            facets.remove(dataType, future);
+        }
+        future.complete(facet);
+        return facet;
+    }
+
+    /**
+     * This method does not block, even if the facet is being computed.
+     * @param dataType the facet class
+     * @return the facet or <code>null</code> if it has not been computed (yet)
+     */
+    public <T extends WorldFacet> T getFacetIfComputed(Class<T> dataType) {
+        CompletableFuture<WorldFacet> future = facets.get(dataType);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            return dataType.cast(future.getNow(null));
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isComputed(Class<? extends WorldFacet> dataType) {
+        return getFacetIfComputed(dataType) != null;
+    }
+
+    @Override
+    public void computeFacet(Class<? extends WorldFacet> dataType) {
+        getFacet(dataType);
     }
 
     @Override
-    public synchronized <T extends WorldFacet> T getFacet(Class<T> dataType) {
-        return base.getFacet(dataType);
+    public void render(FacetLayer layer, BufferedImage img) {
+        layer.render(img, this);
+    }
+
+    @Override
+    public ThreadSafeRegion retain(World world, Predicate<Class<? extends WorldFacet>> filter, FacetDependencyGraph graph) {
+        Map<Class<? extends WorldFacet>, WorldFacet> retained = copyComputedFacets(filter);
+        Region region = world.getWorldData(getRegion());
+        graph.skipProviders(region, retained.keySet());
+        return new ThreadSafeRegion(region, retained);
+    }
+
+    /**
+     * This method does not block, even if a facet is being computed.
+     * @return a snapshot of all facets that have been computed so far
+     */
+    public Collection<WorldFacet> getComputedFacets() {
+        Collection<WorldFacet> result = new ArrayList<>();
+        for (Class<? extends WorldFacet> type : facets.keySet()) {
+            WorldFacet facet = getFacetIfComputed(type);
+            if (facet != null) {
+                result.add(facet);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method does not block, even if a facet is being computed.
+     * @param filter selects the facet types to copy
+     * @return a snapshot of the computed facets whose type matches the filter
+     */
+    public Map<Class<? extends WorldFacet>, WorldFacet> copyComputedFacets(Predicate<Class<? extends WorldFacet>> filter) {
+        Map<Class<? extends WorldFacet>, WorldFacet> result = new HashMap<>();
+        for (Class<? extends WorldFacet> type : facets.keySet()) {
+            if (filter.test(type)) {
+                WorldFacet facet = getFacetIfComputed(type);
+                if (facet != null) {
+                    result.put(type, facet);
+                }
+            }
+        }
+        return result;
     }
 
     @Override
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Predicate;
+
+import org.terasology.math.Region3i;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.worldviewer.core.FacetDependencyGraph;
+import org.terasology.worldviewer.layers.FacetLayer;
+
+/**
+ * The generated data of a tile that facet layers are rendered from.
+ * Implementations are thread-safe.
+ * @author Martin Steiger
+ */
+public interface TileRegion {
+
+    /**
+     * @return the covered area in world coordinates
+     */
+    Region3i getRegion();
+
+    /**
+     * This method does not block, even if the facet is being computed.
+     * @param dataType the facet class
+     * @return true if the facet has been computed already
+     */
+    boolean isComputed(Class<? extends WorldFacet> dataType);
+
+    /**
+     * Computes a facet (unless it is known already)
+     * @param dataType the facet class
+     */
+    void computeFacet(Class<? extends WorldFacet> dataType);
+
+    /**
+     * @param layer the layer to render
+     * @param img the target image - an empty ARGB buffer of the tile size
+     */
+    void render(FacetLayer layer, BufferedImage img);
+
+    /**
+     * @param world the world to generate new facets from
+     * @param filter selects the facet types that are still valid
+     * @param graph skips the providers of the retained facets
+     * @return a new region of the same area that contains all computed facets that match the filter
+     */
+    TileRegion retain(World world, Predicate<Class<? extends WorldFacet>> filter, FacetDependencyGraph graph);
+}
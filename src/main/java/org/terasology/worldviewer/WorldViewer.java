@@ -20,13 +20,19 @@ import java.awt.Image;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 import javax.swing.JFrame;
@@ -40,10 +46,15 @@ import org.kohsuke.args4j.CmdLineParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.engine.splash.SplashScreen;
+import org.terasology.math.Rect2i;
 import org.terasology.world.generator.WorldGenerator;
 import org.terasology.worldviewer.config.Config;
 import org.terasology.worldviewer.config.WorldConfig;
+import org.terasology.worldviewer.core.BatchRenderer;
+import org.terasology.worldviewer.core.TilePipeline;
+import org.terasology.worldviewer.core.TileServer;
 import org.terasology.worldviewer.env.TinyEnvironment;
+import org.terasology.worldviewer.layers.FacetLayer;
 
 import version.GitVersion;
 
@@ -73,19 +84,38 @@ public final class WorldViewer {
         CmdLineConfigs cmdLineOpts = new CmdLineConfigs();
         CmdLineParser parser = new CmdLineParser(cmdLineOpts);
 
-        SplashScreen.getInstance().post("Loading ...");
-
         try {
+            parser.parseArgument(args);
+
+            if (cmdLineOpts.help) {
+                System.out.println("WorldViewer - Version " + GitVersion.getVersion());
+                parser.printUsage(System.out);
+                return;
+            }
+
+            boolean headless = cmdLineOpts.render || cmdLineOpts.servePort != null;
+            if (headless) {
+                // must be set before any AWT class is initialized
+                System.setProperty("java.awt.headless", "true");
+            } else {
+                SplashScreen.getInstance().post("Loading ...");
+            }
+
 //            FullEnvironment.setup();
             TinyEnvironment.setup();
 
             Config config = Config.load(CONFIG_PATH);
 
-            parser.parseArgument(args);
+            if (cmdLineOpts.render) {
+                if (!renderHeadless(config, cmdLineOpts)) {
+                    // batch jobs check the exit status
+                    System.exit(1);
+                }
+                return;
+            }
 
-            if (cmdLineOpts.help) {
-                System.out.println("WorldViewer - Version " + GitVersion.getVersion());
-                parser.printUsage(System.out);
+            if (cmdLineOpts.servePort != null) {
+                serveTiles(config, cmdLineOpts);
                 return;
             }
 
@@ -104,6 +134,117 @@ public final class WorldViewer {
         }
     }
 
+    /**
+     * @return true if the image was written successfully
+     */
+    private static boolean renderHeadless(Config config, CmdLineConfigs cmdLineOpts) {
+        Rect2i area = parseArea(cmdLineOpts.area);
+        if (area == null || cmdLineOpts.zoom <= 0) {
+            System.err.println("Invalid area or zoom factor");
+            return false;
+        }
+
+        WorldGenerator worldGen = createWorldGenerator(config.getWorldConfig(), cmdLineOpts);
+        if (worldGen == null) {
+            System.err.println("Could not load any world generator class");
+            return false;
+        }
+
+        List<FacetLayer> layers = createHeadlessLayers(worldGen, config, cmdLineOpts);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        try (TilePipeline pipeline = new TilePipeline(worldGen, layers,
+                    cmdLineOpts.regionCacheMB, cmdLineOpts.imageCacheMB, cmdLineOpts.offHeapCacheMB, cmdLineOpts.getDiskCacheDir());
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(cmdLineOpts.outFile))) {
+            BatchRenderer renderer = new BatchRenderer(pipeline, numThreads);
+            renderer.render(area, cmdLineOpts.zoom, out);
+            logger.info("Image written to {}", cmdLineOpts.outFile.getAbsolutePath());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Could not render image", e);
+            return false;
+        }
+    }
+
+    private static void serveTiles(Config config, CmdLineConfigs cmdLineOpts) {
+        WorldGenerator worldGen = createWorldGenerator(config.getWorldConfig(), cmdLineOpts);
+        if (worldGen == null) {
+            System.err.println("Could not load any world generator class");
+            return;
+        }
+
+        List<FacetLayer> layers = createHeadlessLayers(worldGen, config, cmdLineOpts);
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        TilePipeline pipeline = new TilePipeline(worldGen, layers,
+                cmdLineOpts.regionCacheMB, cmdLineOpts.imageCacheMB, cmdLineOpts.offHeapCacheMB, cmdLineOpts.getDiskCacheDir());
+        try {
+            TileServer server = new TileServer(pipeline, cmdLineOpts.servePort, numThreads);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                pipeline.close();
+            }));
+            // the server threads keep the application alive
+            server.start();
+        } catch (IOException e) {
+            logger.error("Could not start tile server", e);
+            pipeline.close();
+        }
+    }
+
+    /**
+     * Creates the facet layers as configured, optionally restricted by the command line
+     */
+    private static List<FacetLayer> createHeadlessLayers(WorldGenerator worldGen, Config config, CmdLineConfigs cmdLineOpts) {
+        List<FacetLayer> layers = FacetLayers.createLayers(worldGen, config);
+        if (cmdLineOpts.layers != null) {
+            selectLayers(layers, cmdLineOpts.layers);
+        }
+        return layers;
+    }
+
+    /**
+     * @param text the area in the format "x,z,width,height"
+     * @return the area or <code>null</code> if invalid
+     */
+    private static Rect2i parseArea(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            int x = Integer.parseInt(parts[0].trim());
+            int z = Integer.parseInt(parts[1].trim());
+            int width = Integer.parseInt(parts[2].trim());
+            int height = Integer.parseInt(parts[3].trim());
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            return Rect2i.createFromMinAndSize(x, z, width, height);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Shows only the layers with the given names (case-insensitive)
+     * @param layers the layers
+     * @param names comma-separated layer names
+     */
+    private static void selectLayers(List<FacetLayer> layers, String names) {
+        Set<String> selected = new HashSet<>();
+        for (String name : names.split(",")) {
+            selected.add(name.trim().toLowerCase(Locale.ENGLISH));
+        }
+
+        for (FacetLayer layer : layers) {
+            String name = layer.toString().toLowerCase(Locale.ENGLISH);
+            layer.setVisible(selected.remove(name));
+        }
+
+        for (String unknown : selected) {
+            logger.warn("Unknown layer \"{}\" - available layers are {}", unknown, layers);
+        }
+    }
+
     private static void setupLookAndFeel() {
         try {
             UIManager.setLookAndFeel(new PlasticLookAndFeel());
@@ -143,6 +284,20 @@ public final class WorldViewer {
             }
         }
 
+        WorldGenerator worldGen = createWorldGenerator(wgConfig, cmdLineOpts);
+        if (worldGen != null) {
+            createAndShowMainFrame(worldGen, config, cmdLineOpts);
+        } else {
+            String message = "Could not load any world generator class";
+            JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Command line options override the configured world generator class and seed
+     * @return an initialized world generator or <code>null</code>
+     */
+    private static WorldGenerator createWorldGenerator(WorldConfig wgConfig, CmdLineConfigs cmdLineOpts) {
         String worldGenClass = wgConfig.getWorldGenClass();
         String worldSeed = wgConfig.getWorldSeed();
 
@@ -158,15 +313,12 @@ public final class WorldViewer {
         if (worldGen != null) {
             worldGen.setWorldSeed(worldSeed);
             worldGen.initialize();
-            createAndShowMainFrame(worldGen, config);
-        } else {
-            String message = "Could not load any world generator class";
-            JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
         }
+        return worldGen;
     }
 
-    private static void createAndShowMainFrame(WorldGenerator worldGen, Config config) {
-        JFrame frame = new MainFrame(worldGen, config);
+    private static void createAndShowMainFrame(WorldGenerator worldGen, Config config, CmdLineConfigs cmdLineOpts) {
+        JFrame frame = new MainFrame(worldGen, config, cmdLineOpts);
         frame.setIconImages(loadIcons());
         frame.setTitle("WorldViewer " + GitVersion.getVersion());
         frame.setSize(1280, 720);
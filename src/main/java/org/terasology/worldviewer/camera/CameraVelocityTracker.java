@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.camera;
+
+import java.util.concurrent.TimeUnit;
+
+import org.terasology.math.geom.ImmutableVector2f;
+import org.terasology.math.geom.Vector2f;
+
+/**
+ * Tracks the translation velocity of a camera, no matter if
+ * it is moved by mouse, keyboard or anything else.
+ * Zoom changes reset the velocity.
+ * @author Martin Steiger
+ */
+public class CameraVelocityTracker implements CameraListener {
+
+    /**
+     * The camera is considered to be at rest if it hasn't moved for this long
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    /**
+     * The weight of the latest sample in the smoothed velocity
+     */
+    private static final float SMOOTHING = 0.3f;
+
+    private final Camera camera;
+
+    private ImmutableVector2f lastPos;
+    private long lastTime;
+
+    private final Vector2f velocity = new Vector2f();
+
+    /**
+     * @param camera the camera to track - the tracker must be registered as listener separately
+     */
+    public CameraVelocityTracker(Camera camera) {
+        this.camera = camera;
+    }
+
+    @Override
+    public void onPosChange() {
+        ImmutableVector2f pos = camera.getPos();
+        long now = System.nanoTime();
+        long dt = now - lastTime;
+
+        if (lastPos == null || dt > IDLE_NANOS) {
+            velocity.set(0, 0);
+        } else if (dt > 0) {
+            float secs = dt / (float) TimeUnit.SECONDS.toNanos(1);
+            float vx = (pos.getX() - lastPos.getX()) / secs;
+            float vy = (pos.getY() - lastPos.getY()) / secs;
+            velocity.set(
+                    velocity.getX() + SMOOTHING * (vx - velocity.getX()),
+                    velocity.getY() + SMOOTHING * (vy - velocity.getY()));
+        }
+
+        lastPos = pos;
+        lastTime = now;
+    }
+
+    @Override
+    public void onZoomChange() {
+        // zooming moves the camera towards the cursor - this is not a movement
+        lastPos = null;
+        velocity.set(0, 0);
+    }
+
+    /**
+     * @return the smoothed velocity in world blocks per second (zero if the camera is at rest)
+     */
+    public ImmutableVector2f getVelocity() {
+        if (lastPos == null || System.nanoTime() - lastTime > IDLE_NANOS) {
+            return new ImmutableVector2f(0, 0);
+        }
+        return new ImmutableVector2f(velocity.getX(), velocity.getY());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Rect2i;
+import org.terasology.math.TeraMath;
+import org.terasology.worldviewer.render.PngStripWriter;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.math.DoubleMath;
+import com.google.common.math.IntMath;
+
+/**
+ * Renders a world area into a PNG image without any display. Tiles are rendered
+ * in parallel while the image is written strip by strip (one row of tiles at a time),
+ * so the full image is never kept in memory.
+ * @author Martin Steiger
+ */
+public class BatchRenderer {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRenderer.class);
+
+    /**
+     * The number of tile rows that are rendered ahead of the row that is written
+     */
+    private static final int ROWS_AHEAD = 2;
+
+    private final TilePipeline pipeline;
+    private final int numThreads;
+
+    /**
+     * @param pipeline the tile pipeline to use
+     * @param numThreads the number of worker threads
+     */
+    public BatchRenderer(TilePipeline pipeline, int numThreads) {
+        this.pipeline = pipeline;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param area the world area in blocks
+     * @param zoom the number of pixels per block
+     * @param out the target stream (will be closed)
+     * @throws IOException if writing fails or a tile cannot be rendered
+     */
+    public void render(Rect2i area, float zoom, OutputStream out) throws IOException {
+        // the image size must use the same rounding as the strip boundaries below
+        int width = Math.max(1, toPixel(area.width(), zoom));
+        int height = Math.max(1, toPixel(area.height(), zoom));
+
+        // the same level selection as in the viewer - tiles are never downscaled by more than 50%
+        double log2 = -Math.log(zoom) / Math.log(2);
+        int level = TeraMath.clamp((int) Math.floor(log2 + 1e-6), 0, TilePipeline.MAX_LEVEL);
+
+        int sizeX = TilePipeline.TILE_SIZE_X << level;
+        int sizeY = TilePipeline.TILE_SIZE_Y << level;
+        int minTileX = IntMath.divide(area.minX(), sizeX, RoundingMode.FLOOR);
+        int maxTileX = IntMath.divide(area.minX() + area.width(), sizeX, RoundingMode.CEILING);
+        int minTileY = IntMath.divide(area.minY(), sizeY, RoundingMode.FLOOR);
+        int maxTileY = IntMath.divide(area.minY() + area.height(), sizeY, RoundingMode.CEILING);
+
+        logger.info("Rendering {}x{} pixels from {}x{} tiles at level {} using {} threads",
+                width, height, maxTileX - minTileX, maxTileY - minTileY, level, numThreads);
+
+        Stopwatch sw = Stopwatch.createStarted();
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        Deque<List<Future<BufferedImage>>> pendingRows = new ArrayDeque<>();
+
+        try (PngStripWriter writer = new PngStripWriter(out, width, height)) {
+            int nextRow = minTileY;
+            for (int ty = minTileY; ty < maxTileY; ty++) {
+                // keep the pool busy while the current row is written
+                while (nextRow < maxTileY && nextRow <= ty + ROWS_AHEAD) {
+                    pendingRows.addLast(submitRow(pool, level, nextRow, minTileX, maxTileX));
+                    nextRow++;
+                }
+
+                List<Future<BufferedImage>> tiles = pendingRows.removeFirst();
+
+                // the pixel rows [rowStart..rowEnd) are covered by this tile row - the last one
+                // always extends to the image bottom, so that exactly height rows are written
+                int rowStart = TeraMath.clamp(toPixel(ty * sizeY - area.minY(), zoom), 0, height);
+                int rowEnd = (ty == maxTileY - 1)
+                        ? height
+                        : TeraMath.clamp(toPixel((ty + 1) * sizeY - area.minY(), zoom), 0, height);
+                if (rowEnd > rowStart) {
+                    BufferedImage strip = new BufferedImage(width, rowEnd - rowStart, BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = strip.createGraphics();
+                    Object hint = (zoom < 1)
+                            ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+                            : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+                    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
+                    g.translate(0, -rowStart);
+                    g.scale(zoom, zoom);
+                    g.translate(-area.minX(), -area.minY());
+
+                    for (int tx = minTileX; tx < maxTileX; tx++) {
+                        BufferedImage tile = waitFor(tiles.get(tx - minTileX));
+                        g.drawImage(tile, tx * sizeX, ty * sizeY, sizeX, sizeY, null);
+                    }
+                    g.dispose();
+
+                    int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+                    writer.writeRows(pixels, 0, width, rowEnd - rowStart);
+                }
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Completed tile row {} of {}", ty - minTileY + 1, maxTileY - minTileY);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        logger.info("Rendered image in {}s.", sw.elapsed(TimeUnit.SECONDS));
+    }
+
+    private List<Future<BufferedImage>> submitRow(ExecutorService pool, int level, int ty, int minTileX, int maxTileX) {
+        List<Future<BufferedImage>> row = new ArrayList<>(maxTileX - minTileX);
+        for (int tx = minTileX; tx < maxTileX; tx++) {
+            TileKey key = new TileKey(level, tx, ty);
+            row.add(pool.submit(() -> pipeline.getTile(key)));
+        }
+        return row;
+    }
+
+    /**
+     * @return the first pixel row whose center lies at or below the given world offset
+     */
+    private static int toPixel(int blocks, float zoom) {
+        return DoubleMath.roundToInt(blocks * (double) zoom, RoundingMode.HALF_DOWN);
+    }
+
+    private static BufferedImage waitFor(Future<BufferedImage> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for tiles");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not render tile", e.getCause());
+        }
+    }
+}
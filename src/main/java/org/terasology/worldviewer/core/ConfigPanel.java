@@ -62,7 +62,7 @@ public class ConfigPanel extends JPanel {
 
     private static final Logger logger = LoggerFactory.getLogger(ConfigPanel.class);
 
-    private final List<Observer<WorldGenerator>> observers = Lists.newArrayList();
+    private final List<Observer<Component>> observers = Lists.newArrayList();
 
     private final WorldGenerator worldGen;
 
@@ -100,20 +100,20 @@ public class ConfigPanel extends JPanel {
     }
 
     /**
-     * Adds an observer
+     * Adds an observer that is notified with the config component that has changed
      * @param obs the observer to add
      */
-    public void addObserver(Observer<WorldGenerator> obs) {
+    public void addObserver(Observer<Component> obs) {
         observers.add(obs);
     }
 
-    public void removeObserver(Observer<WorldGenerator> obs) {
+    public void removeObserver(Observer<Component> obs) {
         observers.remove(obs);
     }
 
-    private void notifyObservers() {
-        for (Observer<WorldGenerator> obs : observers) {
-            obs.update(worldGen);
+    private void notifyObservers(Component changed) {
+        for (Observer<Component> obs : observers) {
+            obs.update(changed);
         }
     }
 
@@ -164,7 +164,7 @@ public class ConfigPanel extends JPanel {
         }
     }
 
-    private void process(Container parent, Object obj, Field field) {
+    private void process(Container parent, Component obj, Field field) {
         GridBagConstraints gbc = new GridBagConstraints();
         gbc.gridy = GridBagConstraints.RELATIVE;
         gbc.fill = GridBagConstraints.HORIZONTAL;
@@ -182,7 +182,7 @@ public class ConfigPanel extends JPanel {
             gbc.insets.right = 5;
             gbc.gridx = 1;
             parent.add(spinner, gbc.clone());
-            spinner.addChangeListener(e -> notifyObservers());
+            spinner.addChangeListener(e -> notifyObservers(obj));
         }
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A persistent second-level tile cache. Every fingerprint of the world and
+ * layer config is stored in a separate {@link TilePack} file. Only one pack is active
+ * at a time and it is associated with a config generation. Reads and writes for other
+ * generations are ignored.
+ * <p>
+ * Config changes open a new pack only after the config has settled, so that dragging
+ * a slider does not create (and later delete) a pack file for every intermediate value.
+ * </p>
+ * @author Martin Steiger
+ */
+public class DiskTileCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskTileCache.class);
+
+    private static final String EXTENSION = ".pack";
+
+    /**
+     * The number of hash table entries per pack file - half of it can be used.
+     * With 128x128 tiles, a full pack has about 200 MB.
+     */
+    private static final int PACK_CAPACITY = 1 << 13;
+
+    /**
+     * The maximum number of pack files that are kept - older ones are deleted
+     */
+    private static final int MAX_PACKS = 4;
+
+    /**
+     * The time in milliseconds a config must remain unchanged before its pack is opened
+     */
+    private static final long SETTLE_DELAY = 2000;
+
+    private final Path folder;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    private volatile ActivePack active = new ActivePack(null, null, -1);
+
+    private final ScheduledExecutorService opener = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("tile-pack-opener").setDaemon(true).build());
+
+    /**
+     * The pack that is about to be opened or <code>null</code> - guarded by this
+     */
+    private ScheduledFuture<?> pendingSwitch;
+
+    /**
+     * The generation of the most recent switch request - guarded by this
+     */
+    private int requested = -1;
+
+    /**
+     * @param folder the folder that contains the pack files or <code>null</code> to disable the cache
+     * @param tileWidth the tile width in pixels
+     * @param tileHeight the tile height in pixels
+     */
+    public DiskTileCache(Path folder, int tileWidth, int tileHeight) {
+        this.folder = folder;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * Closes the current pack and opens the one for the given fingerprint once the config
+     * has not changed for a while. Until then, reads and writes are ignored. If the fingerprint
+     * has not changed, the current pack is kept.
+     * @param fingerprint the fingerprint that identifies the tile content
+     * @param generation the config generation that corresponds to the fingerprint
+     */
+    public synchronized void switchTo(String fingerprint, int generation) {
+        requested = generation;
+        if (pendingSwitch != null) {
+            pendingSwitch.cancel(false);
+            pendingSwitch = null;
+        }
+
+        ActivePack current = active;
+        if (current.pack != null && fingerprint.equals(current.fingerprint)) {
+            active = new ActivePack(current.pack, fingerprint, generation);
+            return;
+        }
+
+        closePack();
+        active = new ActivePack(null, null, -1);
+
+        if (folder != null) {
+            pendingSwitch = opener.schedule(() -> openIfLatest(fingerprint, generation), SETTLE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void openIfLatest(String fingerprint, int generation) {
+        // a newer request might have been made while this one was waiting for the lock
+        if (requested == generation) {
+            pendingSwitch = null;
+            open(fingerprint, generation);
+        }
+    }
+
+    /**
+     * Closes the current pack and opens the one for the given fingerprint immediately.
+     * @param fingerprint the fingerprint that identifies the tile content
+     * @param generation the config generation that corresponds to the fingerprint
+     */
+    public synchronized void open(String fingerprint, int generation) {
+        requested = generation;
+        closePack();
+        active = new ActivePack(null, null, -1);
+
+        if (folder == null) {
+            return;
+        }
+
+        TilePack pack = null;
+        try {
+            Files.createDirectories(folder);
+            Path file = folder.resolve(fingerprint + EXTENSION);
+            try {
+                pack = new TilePack(file, tileWidth, tileHeight, PACK_CAPACITY);
+            } catch (IOException e) {
+                logger.warn("Replacing unreadable tile pack {}", file, e);
+                Files.deleteIfExists(file);
+                pack = new TilePack(file, tileWidth, tileHeight, PACK_CAPACITY);
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            logger.info("Using tile pack {} with {} tiles", file, pack.getTileCount());
+            deleteOldPacks();
+        } catch (IOException e) {
+            logger.warn("Could not open tile pack in {}", folder, e);
+        }
+
+        active = new ActivePack(pack, fingerprint, generation);
+    }
+
+    /**
+     * @param generation the config generation
+     * @param key the tile key
+     * @return the stored image or <code>null</code>
+     */
+    public BufferedImage read(int generation, TileKey key) {
+        ActivePack current = active;
+        if (current.pack == null || current.generation != generation) {
+            return null;
+        }
+
+        return current.pack.read(key);
+    }
+
+    /**
+     * @param generation the config generation that was used to render the image
+     * @param key the tile key
+     * @param image the image to store
+     */
+    public void write(int generation, TileKey key, BufferedImage image) {
+        ActivePack current = active;
+        if (current.pack == null || current.generation != generation) {
+            return;
+        }
+
+        try {
+            current.pack.write(key, image);
+        } catch (IOException e) {
+            logger.warn("Could not store tile {}", key, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        opener.shutdownNow();
+        closePack();
+        active = new ActivePack(null, null, -1);
+    }
+
+    private void closePack() {
+        TilePack pack = active.pack;
+        if (pack != null) {
+            try {
+                pack.close();
+            } catch (IOException e) {
+                logger.warn("Could not close tile pack", e);
+            }
+        }
+    }
+
+    private void deleteOldPacks() throws IOException {
+        List<Path> packs = Lists.newArrayList();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            stream.forEach(packs::add);
+        }
+
+        if (packs.size() > MAX_PACKS) {
+            packs.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+            for (Path path : packs.subList(0, packs.size() - MAX_PACKS)) {
+                logger.info("Deleting old tile pack {}", path);
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * An immutable tuple of a pack, its fingerprint and its config generation
+     */
+    private static final class ActivePack {
+        private final TilePack pack;
+        private final String fingerprint;
+        private final int generation;
+
+        ActivePack(TilePack pack, String fingerprint, int generation) {
+            this.pack = pack;
+            this.fingerprint = fingerprint;
+            this.generation = generation;
+        }
+    }
+}
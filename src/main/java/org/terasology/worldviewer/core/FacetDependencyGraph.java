@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.entitySystem.Component;
+import org.terasology.world.generation.ConfigurableFacetProvider;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.Updates;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+
+/**
+ * Derives the facets that are affected by a configuration change from the
+ * {@link Produces}, {@link Requires} and {@link Updates} annotations of the facet providers.
+ * <p>
+ * This depends on implementation details of the engine: {@link World} does not expose its
+ * facet providers, so they are read from the private {@link Multimap} fields of the implementation
+ * (the provider chains of <code>WorldImpl</code>). If the engine changes this, no providers are
+ * found and every world config change invalidates all facets. Similarly, providers of retained
+ * facets are skipped by adding them to the private set of processed providers of <code>RegionImpl</code>.
+ * If it cannot be found, these providers compute their facets again.
+ * </p>
+ * @author Martin Steiger
+ */
+public final class FacetDependencyGraph {
+
+    private static final Logger logger = LoggerFactory.getLogger(FacetDependencyGraph.class);
+
+    /**
+     * The cached field of processed providers per region class (empty if there is none)
+     */
+    private static final ConcurrentMap<Class<?>, Optional<Field>> PROCESSED_FIELDS = new ConcurrentHashMap<>();
+
+    private final Set<FacetProvider> providers;
+
+    /**
+     * @param providers all facet providers of the world
+     */
+    FacetDependencyGraph(Set<FacetProvider> providers) {
+        this.providers = providers;
+    }
+
+    /**
+     * The world does not expose its facet providers, so they are
+     * looked up in the provider chains of the implementation.
+     * @param world the world
+     * @return the dependency graph (empty if the providers cannot be accessed)
+     */
+    public static FacetDependencyGraph create(World world) {
+        Set<FacetProvider> providers = Sets.newIdentityHashSet();
+        for (Class<?> clazz = world.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Multimap.class.isAssignableFrom(field.getType())) {
+                    try {
+                        field.setAccessible(true);
+                        for (Object value : ((Multimap<?, ?>) field.get(world)).values()) {
+                            if (value instanceof FacetProvider) {
+                                providers.add((FacetProvider) value);
+                            }
+                        }
+                    } catch (IllegalAccessException | RuntimeException e) {
+                        logger.warn("Could not access facet providers in field \"{}-{}\"", clazz, field.getName(), e);
+                    }
+                }
+            }
+        }
+
+        if (providers.isEmpty()) {
+            logger.warn("No facet providers found in {} - the engine has probably changed. "
+                    + "World config changes invalidate all facets.", world.getClass());
+        }
+
+        return new FacetDependencyGraph(providers);
+    }
+
+    /**
+     * @param config the configuration component that has changed
+     * @return all facets that depend on the component (transitively)
+     * or <code>null</code> if the component's provider is unknown
+     */
+    public Set<Class<? extends WorldFacet>> getAffectedFacets(Component config) {
+        Set<FacetProvider> dirtyProviders = Sets.newIdentityHashSet();
+        for (FacetProvider provider : providers) {
+            if (provider instanceof ConfigurableFacetProvider) {
+                if (((ConfigurableFacetProvider) provider).getConfiguration() == config) {
+                    dirtyProviders.add(provider);
+                }
+            }
+        }
+
+        if (dirtyProviders.isEmpty()) {
+            if (!providers.isEmpty()) {
+                logger.warn("No facet provider uses config {} - all facets are invalidated", config.getClass());
+            }
+            return null;
+        }
+
+        Set<Class<? extends WorldFacet>> dirtyFacets = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            for (FacetProvider provider : dirtyProviders) {
+                dirtyFacets.addAll(getOutputs(provider));
+            }
+
+            // providers that read a dirty facet become dirty as well
+            changed = false;
+            for (FacetProvider provider : providers) {
+                if (!dirtyProviders.contains(provider) && !Collections.disjoint(getInputs(provider), dirtyFacets)) {
+                    dirtyProviders.add(provider);
+                    changed = true;
+                }
+            }
+        }
+
+        return dirtyFacets;
+    }
+
+    /**
+     * Providers whose outputs are all retained would only compute the same facets again.
+     * @param retained the facets that are retained from an earlier region
+     * @return the providers that produce or update only retained facets
+     */
+    Set<FacetProvider> getRedundantProviders(Set<Class<? extends WorldFacet>> retained) {
+        Set<FacetProvider> redundant = Sets.newIdentityHashSet();
+        for (FacetProvider provider : providers) {
+            Set<Class<? extends WorldFacet>> outputs = getOutputs(provider);
+            if (!outputs.isEmpty() && retained.containsAll(outputs)) {
+                redundant.add(provider);
+            }
+        }
+        return redundant;
+    }
+
+    /**
+     * Marks all providers that produce or update only retained facets as processed in an engine
+     * region. Otherwise, the engine would run them again whenever another provider requires one
+     * of these facets and overwrite the retained facets with new (equal) ones.
+     * @param region the new engine region that the retained facets are handed to
+     * @param retained the facets that are retained from an earlier region
+     * @return true if the providers were marked, false if the region does not track processed providers
+     */
+    public boolean skipProviders(Region region, Set<Class<? extends WorldFacet>> retained) {
+        if (retained.isEmpty()) {
+            return true;
+        }
+
+        Optional<Field> field = PROCESSED_FIELDS.computeIfAbsent(region.getClass(), FacetDependencyGraph::findProcessedField);
+        if (!field.isPresent()) {
+            return false;
+        }
+
+        try {
+            @SuppressWarnings("unchecked")
+            Set<FacetProvider> processed = (Set<FacetProvider>) field.get().get(region);
+            processed.addAll(getRedundantProviders(retained));
+            return true;
+        } catch (IllegalAccessException | RuntimeException e) {
+            logger.warn("Could not mark providers as processed in {}", region.getClass(), e);
+            return false;
+        }
+    }
+
+    /**
+     * @param clazz the region class
+     * @return the first field of type <code>Set&lt;FacetProvider&gt;</code> in the class hierarchy
+     */
+    private static Optional<Field> findProcessedField(Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                Type type = field.getGenericType();
+                if (Set.class.equals(field.getType()) && type instanceof ParameterizedType
+                        && FacetProvider.class.equals(((ParameterizedType) type).getActualTypeArguments()[0])) {
+                    try {
+                        field.setAccessible(true);
+                        return Optional.of(field);
+                    } catch (RuntimeException e) {
+                        logger.warn("Could not access processed providers in field \"{}-{}\"", c, field.getName(), e);
+                    }
+                }
+            }
+        }
+        logger.warn("No processed providers found in {} - the engine has probably changed. "
+                + "Providers of retained facets are run again.", clazz);
+        return Optional.empty();
+    }
+
+    private static Set<Class<? extends WorldFacet>> getOutputs(FacetProvider provider) {
+        Set<Class<? extends WorldFacet>> result = new HashSet<>();
+        Produces produces = provider.getClass().getAnnotation(Produces.class);
+        if (produces != null) {
+            Collections.addAll(result, produces.value());
+        }
+        Updates updates = provider.getClass().getAnnotation(Updates.class);
+        if (updates != null) {
+            for (Facet facet : updates.value()) {
+                result.add(facet.value());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Updated facets are inputs, too.
+     */
+    private static Set<Class<? extends WorldFacet>> getInputs(FacetProvider provider) {
+        Set<Class<? extends WorldFacet>> result = new HashSet<>();
+        Requires requires = provider.getClass().getAnnotation(Requires.class);
+        if (requires != null) {
+            for (Facet facet : requires.value()) {
+                result.add(facet.value());
+            }
+        }
+        Updates updates = provider.getClass().getAnnotation(Updates.class);
+        if (updates != null) {
+            for (Facet facet : updates.value()) {
+                result.add(facet.value());
+            }
+        }
+        return result;
+    }
+}
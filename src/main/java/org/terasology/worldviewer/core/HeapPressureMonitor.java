@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens to GC notifications and fires if the heap is still
+ * filled above a certain threshold after a garbage collection.
+ * @author Martin Steiger
+ */
+public class HeapPressureMonitor implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapPressureMonitor.class);
+
+    private final NotificationEmitter emitter;
+    private final NotificationListener listener;
+
+    /**
+     * The collection usage thresholds that were set before - they are restored on close
+     */
+    private final Map<MemoryPoolMXBean, Long> previousThresholds = new IdentityHashMap<>();
+
+    /**
+     * @param threshold the fill ratio of the heap in [0..1] that is considered critical
+     * @param onPressure called (from a JMX thread) whenever the threshold is exceeded after a GC
+     */
+    public HeapPressureMonitor(double threshold, Runnable onPressure) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                previousThresholds.put(pool, pool.getCollectionUsageThreshold());
+                pool.setCollectionUsageThreshold((long) (max * threshold));
+            }
+        }
+
+        listener = (notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                logger.info("Heap usage after GC exceeds {}%", (int) (threshold * 100));
+                onPressure.run();
+            }
+        };
+
+        // the platform MemoryMXBean is always a NotificationEmitter
+        emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(listener, null, null);
+    }
+
+    @Override
+    public void close() {
+        try {
+            emitter.removeNotificationListener(listener);
+        } catch (ListenerNotFoundException e) {
+            logger.warn("Could not remove heap listener", e);
+        }
+
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : previousThresholds.entrySet()) {
+            entry.getKey().setCollectionUsageThreshold(entry.getValue());
+        }
+        previousThresholds.clear();
+    }
+}
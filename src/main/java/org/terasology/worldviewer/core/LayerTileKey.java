@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.util.Objects;
+
+import org.terasology.worldviewer.layers.FacetLayer;
+
+/**
+ * Identifies the buffer of a single facet layer for a tile.
+ * Layers are compared by identity.
+ * @author Martin Steiger
+ */
+final class LayerTileKey {
+
+    private final FacetLayer layer;
+    private final TileKey tile;
+
+    /**
+     * @param layer the facet layer
+     * @param tile the tile key
+     */
+    LayerTileKey(FacetLayer layer, TileKey tile) {
+        this.layer = layer;
+        this.tile = tile;
+    }
+
+    public FacetLayer getLayer() {
+        return layer;
+    }
+
+    public TileKey getTile() {
+        return tile;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof LayerTileKey) {
+            LayerTileKey other = (LayerTileKey) obj;
+            return layer == other.layer && tile.equals(other.tile);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(layer), tile);
+    }
+
+    @Override
+    public String toString() {
+        return layer + "@" + tile;
+    }
+}
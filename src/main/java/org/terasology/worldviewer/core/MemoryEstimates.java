@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.terasology.math.Region3i;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.base.FieldFacet2D;
+import org.terasology.world.generation.facets.base.FieldFacet3D;
+import org.terasology.world.generation.facets.base.ObjectFacet2D;
+import org.terasology.world.generation.facets.base.SparseObjectFacet3D;
+import org.terasology.worldviewer.SampledRegion;
+import org.terasology.worldviewer.ThreadSafeRegion;
+import org.terasology.worldviewer.TileRegion;
+
+/**
+ * Provides rough estimates of the heap memory that is occupied by cached objects.
+ * @author Martin Steiger
+ */
+final class MemoryEstimates {
+
+    /**
+     * A rough guess for objects that we don't know much about
+     */
+    private static final int OBJECT_OVERHEAD = 64;
+
+    private MemoryEstimates() {
+        // no instances
+    }
+
+    /**
+     * @param image the image
+     * @return the estimated size of the image data in bytes
+     */
+    public static long estimate(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        int bytesPerElem = DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+        return OBJECT_OVERHEAD + (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * bytesPerElem;
+    }
+
+    /**
+     * Only facets that have been computed so far are considered.
+     * @param region the region
+     * @return the estimated size of all computed facets in bytes
+     */
+    public static long estimate(TileRegion region) {
+        return estimate(region, Collections.emptyList());
+    }
+
+    /**
+     * Facets that have not been computed yet are estimated from their class, so that
+     * freshly created regions are weighed by the size they will soon have.
+     * @param region the region
+     * @param expected the facet classes that will be computed for the region
+     * @return the estimated size of all computed and expected facets in bytes
+     */
+    public static long estimate(TileRegion region, Collection<Class<? extends WorldFacet>> expected) {
+        long size = OBJECT_OVERHEAD;
+        if (region instanceof SampledRegion) {
+            for (ThreadSafeRegion row : ((SampledRegion) region).getRows()) {
+                size += estimate(row, expected);
+            }
+        } else if (region instanceof ThreadSafeRegion) {
+            ThreadSafeRegion tsr = (ThreadSafeRegion) region;
+            Region3i area = tsr.getRegion();
+            for (WorldFacet facet : tsr.getComputedFacets()) {
+                size += estimate(facet, area);
+            }
+            for (Class<? extends WorldFacet> facetClass : expected) {
+                if (!tsr.isComputed(facetClass)) {
+                    size += estimate(facetClass, area);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param facet the facet
+     * @param area the area the facet covers
+     * @return the estimated size of the facet in bytes
+     */
+    public static long estimate(WorldFacet facet, Region3i area) {
+        if (facet instanceof SparseObjectFacet3D) {
+            int entries = ((SparseObjectFacet3D<?>) facet).getRelativeEntries().size();
+            return OBJECT_OVERHEAD + (long) entries * OBJECT_OVERHEAD;
+        }
+
+        return estimate(facet.getClass(), area);
+    }
+
+    /**
+     * Sparse facets are estimated as empty.
+     * @param facetClass the facet class
+     * @param area the area the facet covers
+     * @return the estimated size of a facet of that class in bytes
+     */
+    public static long estimate(Class<? extends WorldFacet> facetClass, Region3i area) {
+        long area2d = (long) area.sizeX() * area.sizeZ();
+
+        if (FieldFacet3D.class.isAssignableFrom(facetClass)) {
+            return OBJECT_OVERHEAD + area2d * area.sizeY() * Float.BYTES;
+        }
+
+        if (FieldFacet2D.class.isAssignableFrom(facetClass)) {
+            return OBJECT_OVERHEAD + area2d * Float.BYTES;
+        }
+
+        if (ObjectFacet2D.class.isAssignableFrom(facetClass)) {
+            // the objects are usually shared - only count the references
+            return OBJECT_OVERHEAD + area2d * Integer.BYTES;
+        }
+
+        if (SparseObjectFacet3D.class.isAssignableFrom(facetClass)) {
+            return OBJECT_OVERHEAD;
+        }
+
+        return OBJECT_OVERHEAD + area2d * Integer.BYTES;
+    }
+}
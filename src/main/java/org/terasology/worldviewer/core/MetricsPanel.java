@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import org.terasology.worldviewer.metrics.PipelineMetrics;
+import org.terasology.worldviewer.metrics.StageStats;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Shows the latencies and throughput of the tile pipeline stages.
+ * The values are refreshed once per second while the panel is showing.
+ * @author Martin Steiger
+ */
+public class MetricsPanel extends JPanel implements AutoCloseable {
+
+    private static final long serialVersionUID = 2203372385373419398L;
+
+    private final Timer refreshTimer;
+
+    /**
+     * @param metrics the metrics to show
+     */
+    public MetricsPanel(PipelineMetrics metrics) {
+        super(new BorderLayout());
+
+        StageTableModel model = new StageTableModel();
+        JTable table = new JTable(model);
+        table.getColumnModel().getColumn(0).setPreferredWidth(200);
+        table.getTableHeader().setReorderingAllowed(false);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(600, 150));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            model.update(metrics.getStages());
+        });
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        buttons.add(resetButton);
+        add(buttons, BorderLayout.SOUTH);
+
+        refreshTimer = new Timer(1000, e -> {
+            if (isShowing()) {
+                model.update(metrics.getStages());
+            }
+        });
+        refreshTimer.setInitialDelay(0);
+        refreshTimer.start();
+    }
+
+    @Override
+    public void close() {
+        refreshTimer.stop();
+    }
+
+    private static class StageTableModel extends AbstractTableModel {
+
+        private static final long serialVersionUID = -1442233539447264484L;
+
+        private final ImmutableList<String> columnNames = ImmutableList.of(
+                "Stage", "Count", "Rate [1/s]", "Mean [ms]", "p50 [ms]", "p95 [ms]", "p99 [ms]", "Total [s]");
+
+        private List<StageStats> stages = Collections.emptyList();
+
+        public void update(List<StageStats> newStages) {
+            this.stages = newStages;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columnNames.get(column);
+        }
+
+        @Override
+        public int getRowCount() {
+            return stages.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.size();
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            StageStats stats = stages.get(rowIndex);
+            switch (columnIndex) {
+                case 0:
+                    return stats.getName();
+                case 1:
+                    return Long.toString(stats.getCount());
+                case 2:
+                    return String.format("%.1f", stats.getThroughput());
+                case 3:
+                    return String.format("%.2f", stats.getMean());
+                case 4:
+                    return String.format("%.2f", stats.getP50());
+                case 5:
+                    return String.format("%.2f", stats.getP95());
+                case 6:
+                    return String.format("%.2f", stats.getP99());
+                case 7:
+                    return String.format("%.1f", stats.getTotal() / 1000.0);
+                default:
+                    return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the pixels of tile images outside of the Java heap, so that the garbage collector
+ * neither scans nor copies them. Pixels are kept in direct buffer slabs that are allocated
+ * on demand. Each slab is divided into fixed-size slots that are managed by a free-list.
+ * <p>
+ * The store is used as a second-level cache behind the heap image cache: images are
+ * copied in when they are evicted from the heap and moved out into new images when
+ * they are needed again. If the store is full, the least recently used tile is dropped.
+ * Direct memory is limited by <code>-XX:MaxDirectMemorySize</code> (the max. heap size by default).
+ * </p>
+ * @author Martin Steiger
+ */
+final class OffHeapTileStore implements AutoCloseable {
+
+    /**
+     * The number of tile slots per slab
+     */
+    private static final int SLAB_TILES = 256;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tilePixels;
+    private final int maxSlabs;
+
+    private final List<IntBuffer> slabs = new ArrayList<>();
+
+    /**
+     * A stack of free slot indices
+     */
+    private int[] freeSlots = new int[SLAB_TILES];
+    private int freeCount;
+
+    /**
+     * Maps tile keys to slots in access order - the first entry is the least recently used one
+     */
+    private final LinkedHashMap<TileKey, Slot> index = new LinkedHashMap<>(SLAB_TILES, 0.75f, true);
+
+    /**
+     * @param tileWidth the tile width in pixels
+     * @param tileHeight the tile height in pixels
+     * @param maxMB the memory budget in MB (0 disables the store)
+     */
+    OffHeapTileStore(int tileWidth, int tileHeight, int maxMB) {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tilePixels = tileWidth * tileHeight;
+
+        long slabBytes = (long) SLAB_TILES * tilePixels * Integer.BYTES;
+        this.maxSlabs = (int) (maxMB * 1024L * 1024L / slabBytes);
+    }
+
+    /**
+     * Copies the pixels of a tile image into the store. An existing entry for the same tile is replaced.
+     * @param key the tile key
+     * @param tile the tile image (RGB, alpha is ignored)
+     * @return true if the tile was stored, false if the store is disabled
+     */
+    synchronized boolean write(TileKey key, TileImage tile) {
+        Slot slot = index.get(key);
+        if (slot == null) {
+            int idx = allocate();
+            if (idx < 0) {
+                return false;
+            }
+            slot = new Slot(idx);
+            index.put(key, slot);
+        }
+        slot.generation = tile.getGeneration();
+
+        IntBuffer buffer = position(slot.index);
+        BufferedImage image = tile.getImage();
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            buffer.put(pixels, 0, tilePixels);
+        } else {
+            buffer.put(image.getRGB(0, 0, tileWidth, tileHeight, null, 0, tileWidth));
+        }
+        return true;
+    }
+
+    /**
+     * Copies the pixels of a stored tile into a new image on the heap and
+     * releases its slot - the tile is expected to move back to the heap cache.
+     * @param key the tile key
+     * @return the tile image (possibly outdated) or <code>null</code>
+     */
+    synchronized TileImage take(TileKey key) {
+        Slot slot = index.remove(key);
+        if (slot == null) {
+            return null;
+        }
+
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        position(slot.index).get(pixels, 0, tilePixels);
+        release(slot.index);
+        return new TileImage(image, slot.generation);
+    }
+
+    /**
+     * @return the number of stored tiles
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Releases all slabs - their memory is returned once they are garbage-collected
+     */
+    @Override
+    public synchronized void close() {
+        index.clear();
+        slabs.clear();
+        freeCount = 0;
+    }
+
+    /**
+     * Takes a slot from the free-list. If it is empty, a new slab is allocated
+     * or the least recently used tile is dropped if the budget is exhausted.
+     * @return the slot index or -1 if the store is disabled
+     */
+    private int allocate() {
+        if (freeCount == 0) {
+            if (slabs.size() < maxSlabs) {
+                addSlab();
+            } else if (!index.isEmpty()) {
+                Iterator<Map.Entry<TileKey, Slot>> it = index.entrySet().iterator();
+                Slot eldest = it.next().getValue();
+                it.remove();
+                return eldest.index;
+            } else {
+                return -1;
+            }
+        }
+        return freeSlots[--freeCount];
+    }
+
+    private void release(int idx) {
+        freeSlots[freeCount++] = idx;
+    }
+
+    private void addSlab() {
+        int first = slabs.size() * SLAB_TILES;
+        ByteBuffer bytes = ByteBuffer.allocateDirect(SLAB_TILES * tilePixels * Integer.BYTES);
+        slabs.add(bytes.order(ByteOrder.nativeOrder()).asIntBuffer());
+
+        if (freeSlots.length < slabs.size() * SLAB_TILES) {
+            int[] grown = new int[slabs.size() * SLAB_TILES];
+            System.arraycopy(freeSlots, 0, grown, 0, freeCount);
+            freeSlots = grown;
+        }
+
+        // push in reverse order, so that slots are handed out in ascending order
+        for (int i = SLAB_TILES - 1; i >= 0; i--) {
+            release(first + i);
+        }
+    }
+
+    private IntBuffer position(int idx) {
+        IntBuffer slab = slabs.get(idx / SLAB_TILES);
+        slab.position((idx % SLAB_TILES) * tilePixels);
+        return slab;
+    }
+
+    /**
+     * The location of a tile in the slabs and the generation it was rendered for
+     */
+    private static final class Slot {
+        final int index;
+        int generation;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Converts tile images with few distinct colors (e.g. biome maps) into palette-indexed images.
+ * Up to 256 colors are stored as bytes. Images with more colors keep their direct color
+ * representation. The conversion is lossless.
+ * <p>
+ * Fewer colors are not packed into 4-bit nibbles - Java2D has no native loops for
+ * such rasters, so drawing them is several times slower than drawing int pixels.
+ * </p>
+ * <p>
+ * Only buffers of alpha-composed layers are compacted. Composed tiles keep their int pixels
+ * in all caches: they often have more colors than fit into a palette and indexed images
+ * are drawn through slower scaled loops.
+ * </p>
+ * @author Martin Steiger
+ */
+final class PaletteImages {
+
+    private static final int MAX_COLORS = 256;
+
+    /**
+     * The size of the color hash table - a power of two that is well above MAX_COLORS
+     */
+    private static final int TABLE_SIZE = 1024;
+
+    private PaletteImages() {
+        // no instances
+    }
+
+    /**
+     * @param image an image of type <code>TYPE_INT_RGB</code> or <code>TYPE_INT_ARGB</code> (other types are returned unchanged)
+     * @return a palette-indexed copy of the image or the image itself if it has too many colors
+     */
+    public static BufferedImage compact(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB) {
+            return image;
+        }
+
+        boolean hasAlpha = (type == BufferedImage.TYPE_INT_ARGB);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int[] keys = new int[TABLE_SIZE];
+        int[] slots = new int[TABLE_SIZE];
+        Arrays.fill(slots, -1);
+        int[] palette = new int[MAX_COLORS];
+        int count = 0;
+
+        byte[] indices = new byte[width * height];
+        int prevColor = 0;
+        int prevIndex = -1;
+
+        for (int i = 0; i < indices.length; i++) {
+            int color = hasAlpha ? pixels[i] : (pixels[i] | 0xFF000000);
+
+            // neighboring pixels often have the same color
+            if (color != prevColor || prevIndex < 0) {
+                int pos = (color * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(TABLE_SIZE));
+                while (slots[pos] >= 0 && keys[pos] != color) {
+                    pos = (pos + 1) & (TABLE_SIZE - 1);
+                }
+                if (slots[pos] < 0) {
+                    if (count == MAX_COLORS) {
+                        return image;
+                    }
+                    keys[pos] = color;
+                    slots[pos] = count;
+                    palette[count++] = color;
+                }
+                prevColor = color;
+                prevIndex = slots[pos];
+            }
+            indices[i] = (byte) prevIndex;
+        }
+
+        DataBufferByte buffer = new DataBufferByte(indices, indices.length);
+        WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width, 1, new int[] {0}, null);
+
+        IndexColorModel colorModel = new IndexColorModel(8, count, palette, 0, hasAlpha, -1, DataBuffer.TYPE_BYTE);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.entitySystem.Component;
+import org.terasology.world.generator.WorldConfigurator;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.config.FacetConfig;
+import org.terasology.worldviewer.layers.FacetLayer;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import version.GitVersion;
+
+/**
+ * Computes fingerprints that identify the content of rendered tiles
+ * across different sessions.
+ * @author Martin Steiger
+ */
+final class TileFingerprint {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileFingerprint.class);
+
+    /**
+     * The maximum nesting depth of objects whose fields are hashed
+     */
+    private static final int MAX_DEPTH = 4;
+
+    private TileFingerprint() {
+        // no instances
+    }
+
+    /**
+     * @param clazz the class of interest
+     * @return a hash of the jar file that contains the class or its location if it's not a jar file
+     */
+    public static String hashCodeSource(Class<?> clazz) {
+        try {
+            CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+            if (codeSource == null) {
+                return "unknown";
+            }
+            File file = new File(codeSource.getLocation().toURI());
+            if (file.isFile()) {
+                return Files.hash(file, Hashing.sha1()).toString();
+            }
+            return file.getAbsolutePath();
+        } catch (IOException | URISyntaxException | SecurityException e) {
+            logger.warn("Could not hash code source of {}", clazz, e);
+            return "unknown";
+        }
+    }
+
+    /**
+     * The rendering code of the viewer determines the tile content just like the world generator.
+     * Development builds are not packaged as jar files, so the version string is included as well.
+     * @return a hash of the viewer code and its version
+     */
+    public static String hashViewerCode() {
+        return GitVersion.getVersion() + "/" + hashCodeSource(TileFingerprint.class);
+    }
+
+    /**
+     * @param worldGen the world generator
+     * @param layers the list of layers (in rendering order)
+     * @param codeHash the hash of the world generator and viewer code
+     * @return a hex string that changes whenever the rendered tiles would change
+     */
+    public static String compute(WorldGenerator worldGen, List<FacetLayer> layers, String codeHash) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(worldGen.getUri().toString(), StandardCharsets.UTF_8);
+        hasher.putString(worldGen.getWorldSeed(), StandardCharsets.UTF_8);
+        hasher.putString(codeHash, StandardCharsets.UTF_8);
+
+        Optional<WorldConfigurator> configOpt = worldGen.getConfigurator();
+        if (configOpt.isPresent()) {
+            for (Entry<String, Component> entry : configOpt.get().getProperties().entrySet()) {
+                hasher.putString(entry.getKey(), StandardCharsets.UTF_8);
+                putFields(hasher, entry.getValue(), 0);
+            }
+        }
+
+        for (FacetLayer layer : layers) {
+            if (layer.isVisible()) {
+                hasher.putString(layer.getClass().getName(), StandardCharsets.UTF_8);
+                hasher.putString(layer.getFacetClass().getName(), StandardCharsets.UTF_8);
+                FacetConfig config = layer.getConfig();
+                if (config != null) {
+                    putFields(hasher, config, 0);
+                }
+            }
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private static void putFields(Hasher hasher, Object obj, int depth) {
+        hasher.putString(obj.getClass().getName(), StandardCharsets.UTF_8);
+        for (Field field : obj.getClass().getDeclaredFields()) {
+            int mod = field.getModifiers();
+            if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod) && !field.isSynthetic()) {
+                try {
+                    field.setAccessible(true);
+                    hasher.putString(field.getName(), StandardCharsets.UTF_8);
+                    putValue(hasher, field.get(obj), depth);
+                } catch (IllegalAccessException | SecurityException e) {
+                    logger.warn("Could not access field \"{}-{}\"", obj.getClass(), field.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hashes values structurally, since the string representation of most objects
+     * contains the identity hash code, which differs between sessions.
+     */
+    private static void putValue(Hasher hasher, Object value, int depth) {
+        if (value == null || value instanceof Number || value instanceof Boolean || value instanceof Character
+                || value instanceof CharSequence || value instanceof Enum) {
+            hasher.putString(String.valueOf(value), StandardCharsets.UTF_8);
+        } else if (value instanceof Class) {
+            hasher.putString(((Class<?>) value).getName(), StandardCharsets.UTF_8);
+        } else if (depth >= MAX_DEPTH || value.getClass().isSynthetic()) {
+            // deeply nested objects are not hashed - this also stops cycles.
+            // Lambdas have no state that could be hashed and their class names vary.
+            hasher.putInt(depth);
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            hasher.putInt(length);
+            for (int i = 0; i < length; i++) {
+                putValue(hasher, Array.get(value, i), depth + 1);
+            }
+        } else if (value instanceof Iterable) {
+            for (Object element : (Iterable<?>) value) {
+                putValue(hasher, element, depth + 1);
+            }
+        } else if (value instanceof Map) {
+            for (Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                putValue(hasher, entry.getKey(), depth + 1);
+                putValue(hasher, entry.getValue(), depth + 1);
+            }
+        } else {
+            putFields(hasher, value, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * An immutable tile image that is stamped with the
+ * configuration generation it was rendered for.
+ * @author Martin Steiger
+ */
+final class TileImage {
+
+    private final BufferedImage image;
+    private final int generation;
+
+    /**
+     * @param image the rendered image
+     * @param generation the config generation that was used for rendering
+     */
+    TileImage(BufferedImage image, int generation) {
+        this.image = image;
+        this.generation = generation;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+}
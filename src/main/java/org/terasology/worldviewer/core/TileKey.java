@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Identifies a tile in the level-of-detail pyramid. A tile at level <code>n</code>
+ * covers <code>2^n x 2^n</code> tiles of level 0 at the same resolution.
+ * <p>
+ * Keys can be packed into a <code>long</code> to avoid allocations in hot paths: the level
+ * is stored in the upper 8 bits, followed by 28 bits for x and 28 bits for y.
+ * Tile coordinates must be in the range [-2^27..2^27).
+ * </p>
+ * @author Martin Steiger
+ */
+public final class TileKey {
+
+    private static final int COORD_BITS = 28;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+    private static final int MAX_LEVEL = (1 << (64 - 2 * COORD_BITS)) - 1;
+
+    /**
+     * The smallest tile coordinate that can be packed
+     */
+    public static final int MIN_COORD = -(1 << (COORD_BITS - 1));
+
+    /**
+     * The largest tile coordinate that can be packed
+     */
+    public static final int MAX_COORD = (1 << (COORD_BITS - 1)) - 1;
+
+    private final int level;
+    private final int x;
+    private final int y;
+
+    /**
+     * @param level the pyramid level (0 is full resolution)
+     * @param x the tile x coordinate at that level
+     * @param y the tile y coordinate at that level
+     */
+    public TileKey(int level, int x, int y) {
+        this.level = level;
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return the number of level-0 tiles this tile covers along one axis
+     */
+    public int getScale() {
+        return 1 << level;
+    }
+
+    /**
+     * @param dx the x offset (0 or 1)
+     * @param dy the y offset (0 or 1)
+     * @return one of the four tiles at the next lower level
+     */
+    public TileKey getChild(int dx, int dy) {
+        return new TileKey(level - 1, x * 2 + dx, y * 2 + dy);
+    }
+
+    /**
+     * @return this key packed into a <code>long</code>
+     */
+    public long pack() {
+        return pack(level, x, y);
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param x the tile x coordinate at that level
+     * @param y the tile y coordinate at that level
+     * @return the packed tile key
+     * @throws IllegalArgumentException if the level or a coordinate is out of range
+     */
+    public static long pack(int level, int x, int y) {
+        Preconditions.checkArgument(level >= 0 && level <= MAX_LEVEL, "Level out of range");
+        Preconditions.checkArgument(x >= MIN_COORD && x <= MAX_COORD && y >= MIN_COORD && y <= MAX_COORD,
+                "Tile coordinates out of range");
+        return ((long) level << (2 * COORD_BITS)) | ((x & COORD_MASK) << COORD_BITS) | (y & COORD_MASK);
+    }
+
+    /**
+     * @param packed the packed tile key
+     * @return a new tile key instance
+     */
+    public static TileKey unpack(long packed) {
+        return new TileKey(levelOf(packed), xOf(packed), yOf(packed));
+    }
+
+    /**
+     * @param packed the packed tile key
+     * @return the pyramid level
+     */
+    public static int levelOf(long packed) {
+        return (int) (packed >>> (2 * COORD_BITS));
+    }
+
+    /**
+     * @param packed the packed tile key
+     * @return the tile x coordinate
+     */
+    public static int xOf(long packed) {
+        // shift the sign bit to the top and extend it back down
+        return (int) (packed << (64 - 2 * COORD_BITS) >> (64 - COORD_BITS));
+    }
+
+    /**
+     * @param packed the packed tile key
+     * @return the tile y coordinate
+     */
+    public static int yOf(long packed) {
+        return (int) (packed << (64 - COORD_BITS) >> (64 - COORD_BITS));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof TileKey) {
+            TileKey other = (TileKey) obj;
+            return level == other.level && x == other.x && y == other.y;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(pack());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d:%d/%d", level, x, y);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.terasology.worldviewer.core;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BinaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * A concurrent map from packed tile keys (see {@link TileKey#pack()}) to values.
+ * It uses open addressing with linear probing, so lookups do not allocate.
+ * <p>
+ * The map is bounded by the total weight of its values. When it is exceeded,
+ * entries are evicted by the clock (second chance) algorithm, which approximates LRU.
+ * Like Guava's caches, the table is split into segments that are bounded individually.
+ * Each segment is guarded by a {@link StampedLock} - lookups are optimistic and
+ * retry with a read lock only if the segment was modified concurrently.
+ * </p>
+ * @param <V> the value type (<code>null</code> values are not supported)
+ * @author Martin Steiger
+ */
+final class TileMap<V> {
+
+    /**
+     * Receives entries that were evicted to meet the weight limit
+     * @param <V> the value type
+     */
+    @FunctionalInterface
+    interface EvictionListener<V> {
+
+        /**
+         * Called while the segment is locked - the map must not be accessed
+         * @param key the packed tile key
+         * @param value the evicted value
+         */
+        void onEviction(long key, V value);
+    }
+
+    private static final int SEGMENT_BITS = 2;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Segment<V>[] segments;
+    private final ToIntFunction<? super V> weigher;
+    private final EvictionListener<? super V> listener;
+
+    /**
+     * @param maxWeight the max. total weight of all entries
+     * @param weigher computes the weight of a value
+     * @param listener is notified about evicted entries
+     */
+    @SuppressWarnings("unchecked")
+    TileMap(long maxWeight, ToIntFunction<? super V> weigher, EvictionListener<? super V> listener) {
+        this.weigher = weigher;
+        this.listener = listener;
+        this.segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment<>(maxWeight >> SEGMENT_BITS);
+        }
+    }
+
+    private static long mix(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * @param key the packed tile key
+     * @return the value or <code>null</code>
+     */
+    V get(long key) {
+        long hash = mix(key);
+        Segment<V> seg = segmentFor(hash);
+        long stamp = seg.lock.tryOptimisticRead();
+        Table table = seg.table;
+        int idx = table.indexOf(key, hash);
+        Object value = (idx >= 0) ? table.values[idx] : null;
+        if (!seg.lock.validate(stamp)) {
+            stamp = seg.lock.readLock();
+            try {
+                table = seg.table;
+                idx = table.indexOf(key, hash);
+                value = (idx >= 0) ? table.values[idx] : null;
+            } finally {
+                seg.lock.unlockRead(stamp);
+            }
+        }
+        if (value != null) {
+            // a lost update only gives the entry one chance less
+            table.referenced[idx] = true;
+        }
+        @SuppressWarnings("unchecked")
+        V result = (V) value;
+        return result;
+    }
+
+    /**
+     * @param key the packed tile key
+     * @param value the value
+     * @return the previous value or <code>null</code>
+     */
+    V put(long key, V value) {
+        return merge(key, value, (prev, next) -> next);
+    }
+
+    /**
+     * Stores the value if there is none yet. Otherwise, it is combined with the existing value.
+     * @param key the packed tile key
+     * @param value the value
+     * @param func computes the value to store from the existing and the given value
+     * @return the previous value or <code>null</code>
+     */
+    V merge(long key, V value, BinaryOperator<V> func) {
+        long hash = mix(key);
+        Segment<V> seg = segmentFor(hash);
+        long stamp = seg.lock.writeLock();
+        try {
+            int idx = seg.table.indexOf(key, hash);
+            V prev = (idx >= 0) ? seg.valueAt(idx) : null;
+            V next = (prev != null) ? func.apply(prev, value) : value;
+            if (next != prev) {
+                seg.store(key, hash, idx, next, weigher.applyAsInt(next));
+                seg.evict(listener);
+            }
+            return prev;
+        } finally {
+            seg.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the entry only if it maps to the expected instance. The weight is updated
+     * even if both instances are the same.
+     * @param key the packed tile key
+     * @param expected the expected current value
+     * @param value the new value
+     * @return true if the value was replaced
+     */
+    boolean replace(long key, V expected, V value) {
+        long hash = mix(key);
+        Segment<V> seg = segmentFor(hash);
+        long stamp = seg.lock.writeLock();
+        try {
+            int idx = seg.table.indexOf(key, hash);
+            if (idx < 0 || seg.valueAt(idx) != expected) {
+                return false;
+            }
+            seg.store(key, hash, idx, value, weigher.applyAsInt(value));
+            seg.evict(listener);
+            return true;
+        } finally {
+            seg.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param key the packed tile key
+     * @return the removed value or <code>null</code>
+     */
+    V remove(long key) {
+        long hash = mix(key);
+        Segment<V> seg = segmentFor(hash);
+        long stamp = seg.lock.writeLock();
+        try {
+            int idx = seg.table.indexOf(key, hash);
+            if (idx < 0) {
+                return null;
+            }
+            V prev = seg.valueAt(idx);
+            seg.removeAt(idx);
+            return prev;
+        } finally {
+            seg.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes all entries without notifying the listener
+     */
+    void clear() {
+        for (Segment<V> seg : segments) {
+            long stamp = seg.lock.writeLock();
+            try {
+                seg.table = new Table(INITIAL_CAPACITY);
+                seg.count = 0;
+                seg.weight = 0;
+                seg.hand = 0;
+            } finally {
+                seg.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int size() {
+        int size = 0;
+        for (Segment<V> seg : segments) {
+            long stamp = seg.lock.readLock();
+            try {
+                size += seg.count;
+            } finally {
+                seg.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return a snapshot of all keys (not an atomic one across segments)
+     */
+    long[] keys() {
+        long[] result = new long[0];
+        int size = 0;
+        for (Segment<V> seg : segments) {
+            long stamp = seg.lock.readLock();
+            try {
+                Table table = seg.table;
+                if (result.length < size + seg.count) {
+                    result = Arrays.copyOf(result, size + seg.count);
+                }
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.values[i] != null) {
+                        result[size++] = table.keys[i];
+                    }
+                }
+            } finally {
+                seg.lock.unlockRead(stamp);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The arrays of one hash table. It is replaced as a whole when it grows,
+     * so optimistic readers always see arrays of the same length.
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int[] weights;
+        final boolean[] referenced;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            weights = new int[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        /**
+         * The probe length is bounded, since the table could be modified concurrently by a writer
+         * @return the slot index or -1 if not found
+         */
+        int indexOf(long key, long hash) {
+            int mask = keys.length - 1;
+            int idx = home(hash, mask);
+            for (int n = 0; n <= mask; n++) {
+                if (values[idx] == null) {
+                    return -1;
+                }
+                if (keys[idx] == key) {
+                    return idx;
+                }
+                idx = (idx + 1) & mask;
+            }
+            return -1;
+        }
+
+        static int home(long hash, int mask) {
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+
+    /**
+     * A part of the map with its own table, lock and weight limit
+     * @param <V> the value type
+     */
+    private static final class Segment<V> {
+        final StampedLock lock = new StampedLock();
+        final long maxWeight;
+
+        Table table = new Table(INITIAL_CAPACITY);
+        int count;
+        long weight;
+
+        /**
+         * The clock hand - the next slot that is inspected for eviction
+         */
+        int hand;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        @SuppressWarnings("unchecked")
+        V valueAt(int idx) {
+            return (V) table.values[idx];
+        }
+
+        /**
+         * @param idx the slot of the existing entry or -1 to insert a new one
+         */
+        void store(long key, long hash, int idx, V value, int valueWeight) {
+            int slot = idx;
+            if (slot < 0) {
+                if ((count + 1) * 4 > table.keys.length * 3) {
+                    grow();
+                }
+                int mask = table.keys.length - 1;
+                slot = Table.home(hash, mask);
+                while (table.values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table.keys[slot] = key;
+                count++;
+            } else {
+                weight -= table.weights[slot];
+            }
+            table.values[slot] = value;
+            table.weights[slot] = valueWeight;
+            table.referenced[slot] = true;
+            weight += valueWeight;
+        }
+
+        private void grow() {
+            Table prev = table;
+            Table next = new Table(prev.keys.length * 2);
+            int mask = next.keys.length - 1;
+            for (int i = 0; i < prev.keys.length; i++) {
+                if (prev.values[i] != null) {
+                    int slot = Table.home(mix(prev.keys[i]), mask);
+                    while (next.values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    next.keys[slot] = prev.keys[i];
+                    next.values[slot] = prev.values[i];
+                    next.weights[slot] = prev.weights[i];
+                    next.referenced[slot] = prev.referenced[i];
+                }
+            }
+            table = next;
+            hand = 0;
+        }
+
+        /**
+         * Advances the clock hand until the weight limit is met. Referenced
+         * entries get a second chance: the flag is cleared and the hand moves on.
+         */
+        void evict(EvictionListener<? super V> listener) {
+            int mask = table.keys.length - 1;
+            while (weight > maxWeight && count > 0) {
+                hand &= mask;
+                if (table.values[hand] != null) {
+                    if (table.referenced[hand]) {
+                        table.referenced[hand] = false;
+                    } else {
+                        listener.onEviction(table.keys[hand], valueAt(hand));
+                        removeAt(hand);
+                        // another entry might have been shifted into this slot
+                        continue;
+                    }
+                }
+                hand++;
+            }
+        }
+
+        /**
+         * Removes the entry and shifts subsequent entries of the same
+         * probe sequence back, so no tombstones are needed.
+         */
+        void removeAt(int idx) {
+            int mask = table.keys.length - 1;
+            weight -= table.weights[idx];
+            count--;
+
+            int gap = idx;
+            int next = idx;
+            while (true) {
+                next = (next + 1) & mask;
+                if (table.values[next] == null) {
+                    break;
+                }
+                int home = Table.home(mix(table.keys[next]), mask);
+                // the entry can move to the gap unless its home slot is cyclically in (gap, next]
+                boolean stays = (gap <= next) ? (gap < home && home <= next) : (gap < home || home <= next);
+                if (!stays) {
+                    table.keys[gap] = table.keys[next];
+                    table.values[gap] = table.values[next];
+                    table.weights[gap] = table.weights[next];
+                    table.referenced[gap] = table.referenced[next];
+                    gap = next;
+                }
+            }
+            table.values[gap] = null;
+            table.weights[gap] = 0;
+            table.referenced[gap] = false;
+        }
+    }
+}
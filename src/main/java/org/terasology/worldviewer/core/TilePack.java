@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped file that stores tile images of a fixed size as 24-bit RGB.
+ * <p>
+ * The file starts with a header, followed by an open-addressing hash table that
+ * maps tile positions to data slots. The data slots follow after the table
+ * and are mapped in segments on demand.
+ * </p>
+ * <p>
+ * The data of a tile is forced to disk before its table entry is published, so that
+ * a crash can lose tiles, but not leave entries that point to incomplete data.
+ * </p>
+ * @author Martin Steiger
+ */
+final class TilePack implements Closeable {
+
+    private static final int MAGIC = 0x57565450; // "WVTP"
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 16;
+    private static final int BYTES_PER_PIXEL = 3;
+    private static final int SEGMENT_TILES = 256;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer[] segments;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tileBytes;
+    private final long dataStart;
+
+    private final int capacity;
+    private final int maxTiles;
+
+    /**
+     * The number of allocated data slots - guarded by this
+     */
+    private int tileCount;
+
+    /**
+     * @param file the pack file (created if it does not exist)
+     * @param tileWidth the tile width in pixels
+     * @param tileHeight the tile height in pixels
+     * @param capacity the number of hash table entries (power of two) - at most half of them are used
+     * @throws IOException if the file cannot be opened or is not compatible
+     */
+    TilePack(Path file, int tileWidth, int tileHeight, int capacity) throws IOException {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tileBytes = tileWidth * tileHeight * BYTES_PER_PIXEL;
+        this.capacity = capacity;
+        this.maxTiles = capacity / 2;
+        this.dataStart = HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+        this.segments = new MappedByteBuffer[(maxTiles + SEGMENT_TILES - 1) / SEGMENT_TILES];
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean isNew = channel.size() == 0;
+            index = channel.map(MapMode.READ_WRITE, 0, dataStart);
+            if (isNew) {
+                index.putInt(0, MAGIC);
+                index.putInt(4, VERSION);
+                index.putInt(8, tileWidth);
+                index.putInt(12, tileHeight);
+                index.putInt(16, capacity);
+                index.putInt(20, 0);
+            } else {
+                boolean isValid = index.getInt(0) == MAGIC
+                        && index.getInt(4) == VERSION
+                        && index.getInt(8) == tileWidth
+                        && index.getInt(12) == tileHeight
+                        && index.getInt(16) == capacity;
+                if (!isValid) {
+                    throw new IOException("Incompatible tile pack: " + file);
+                }
+                tileCount = Math.max(index.getInt(20), getMaxSlot() + 1);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param key the tile key
+     * @return the stored image or <code>null</code> if not available
+     */
+    public BufferedImage read(TileKey key) {
+        int slot;
+        synchronized (this) {
+            int entryOffset = findEntry(key);
+            slot = index.getInt(entryOffset + 12) - 1;
+        }
+
+        if (slot < 0 || slot >= maxTiles) {
+            return null;
+        }
+
+        byte[] data = new byte[tileBytes];
+        try {
+            ByteBuffer buffer = getSlot(slot);
+            buffer.get(data);
+        } catch (IOException e) {
+            return null;
+        }
+
+        int[] pixels = new int[tileWidth * tileHeight];
+        for (int i = 0; i < pixels.length; i++) {
+            int r = data[i * 3 + 0] & 0xFF;
+            int g = data[i * 3 + 1] & 0xFF;
+            int b = data[i * 3 + 2] & 0xFF;
+            pixels[i] = (r << 16) | (g << 8) | b;
+        }
+
+        BufferedImage image = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB);
+        image.getRaster().setDataElements(0, 0, tileWidth, tileHeight, pixels);
+        return image;
+    }
+
+    /**
+     * @param key the tile key
+     * @param image the image to store
+     * @return true if the image was stored, false if the pack is full
+     * @throws IOException if the data cannot be written
+     */
+    public boolean write(TileKey key, BufferedImage image) throws IOException {
+        if (image.getWidth() != tileWidth || image.getHeight() != tileHeight) {
+            throw new IllegalArgumentException("Invalid tile size");
+        }
+
+        // existing data is never overwritten in place, since a crash could
+        // leave the published entry with a partially written slot
+        int slot;
+        synchronized (this) {
+            if (tileCount >= maxTiles) {
+                return false;
+            }
+            slot = tileCount++;
+            index.putInt(20, tileCount);
+        }
+
+        int[] pixels = image.getRGB(0, 0, tileWidth, tileHeight, null, 0, tileWidth);
+        byte[] data = new byte[tileBytes];
+        for (int i = 0; i < pixels.length; i++) {
+            data[i * 3 + 0] = (byte) (pixels[i] >> 16);
+            data[i * 3 + 1] = (byte) (pixels[i] >> 8);
+            data[i * 3 + 2] = (byte) pixels[i];
+        }
+
+        getSlot(slot).put(data);
+        getSegment(slot / SEGMENT_TILES).force();
+
+        // publish the entry only after the data is complete and on disk
+        synchronized (this) {
+            int entryOffset = findEntry(key);
+            index.putInt(entryOffset + 0, key.getLevel());
+            index.putInt(entryOffset + 4, key.getX());
+            index.putInt(entryOffset + 8, key.getY());
+            index.putInt(entryOffset + 12, slot + 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the number of stored tiles
+     */
+    public synchronized int getTileCount() {
+        return tileCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            index.force();
+        }
+        channel.close();
+    }
+
+    /**
+     * Must be called while holding the lock
+     * @return the byte offset of the entry for the key or an empty entry where it should be inserted
+     */
+    private int findEntry(TileKey key) {
+        int level = key.getLevel();
+        int x = key.getX();
+        int y = key.getY();
+
+        int mask = capacity - 1;
+        int hash = x * 0x9E3779B1 + y * 0x7FEB352D + level * 0x27D4EB2F;
+        int idx = (hash ^ (hash >>> 16)) & mask;
+
+        // this terminates, because the table is at most half full
+        while (true) {
+            int offset = HEADER_SIZE + idx * ENTRY_SIZE;
+            if (index.getInt(offset + 12) == 0) {
+                return offset;
+            }
+            if (index.getInt(offset + 0) == level && index.getInt(offset + 4) == x && index.getInt(offset + 8) == y) {
+                return offset;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    /**
+     * The tile count in the header can be older than the table entries after a crash.
+     * Must be called while holding the lock.
+     * @return the highest slot index that is referenced by a valid entry or -1
+     */
+    private int getMaxSlot() {
+        int maxSlot = -1;
+        for (int idx = 0; idx < capacity; idx++) {
+            int slot = index.getInt(HEADER_SIZE + idx * ENTRY_SIZE + 12) - 1;
+            if (slot < maxTiles) {
+                maxSlot = Math.max(maxSlot, slot);
+            }
+        }
+        return maxSlot;
+    }
+
+    /**
+     * @param slot the slot index
+     * @return a new buffer that is positioned at the start of the slot
+     * @throws IOException if the segment cannot be mapped
+     */
+    private ByteBuffer getSlot(int slot) throws IOException {
+        ByteBuffer buffer = getSegment(slot / SEGMENT_TILES).duplicate();
+        buffer.position((slot % SEGMENT_TILES) * tileBytes);
+        return buffer;
+    }
+
+    /**
+     * @param seg the segment index
+     * @return the mapped segment
+     * @throws IOException if the segment cannot be mapped
+     */
+    private synchronized MappedByteBuffer getSegment(int seg) throws IOException {
+        MappedByteBuffer segment = segments[seg];
+        if (segment == null) {
+            long segSize = (long) SEGMENT_TILES * tileBytes;
+            segment = channel.map(MapMode.READ_WRITE, dataStart + seg * segSize, segSize);
+            segments[seg] = segment;
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,898 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.entitySystem.Component;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.chunks.ChunkConstants;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generator.WorldGenerator;
+import org.terasology.worldviewer.SampledRegion;
+import org.terasology.worldviewer.ThreadSafeRegion;
+import org.terasology.worldviewer.TileRegion;
+import org.terasology.worldviewer.jfr.JfrEvents;
+import org.terasology.worldviewer.jfr.JfrEvents.Span;
+import org.terasology.worldviewer.layers.FacetLayer;
+import org.terasology.worldviewer.metrics.PipelineMetrics;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Renders tile images of the facet layers and caches regions, layer buffers and
+ * tile images in memory and on disk. It does not depend on any display and all
+ * methods are thread-safe.
+ * <p>
+ * Every change of a facet layer increments the config generation and notifies
+ * all observers. Tile images are stamped with the generation they were rendered for.
+ * </p>
+ * @author Martin Steiger
+ */
+public class TilePipeline implements AutoCloseable {
+
+    public static final int TILE_SIZE_X = ChunkConstants.SIZE_X * 4;
+    public static final int TILE_SIZE_Y = ChunkConstants.SIZE_Z * 4;
+
+    /**
+     * The highest level of the tile pyramid that is displayed - a tile at this level covers 8x8 tiles.
+     * Regions of higher levels are used only once for previews, so they are not cached.
+     */
+    public static final int MAX_LEVEL = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(TilePipeline.class);
+
+    private static final String REGION_CACHE = "region";
+    private static final String MEMORY_CACHE = "memory";
+    private static final String OFF_HEAP_CACHE = "off-heap";
+    private static final String DISK_CACHE = "disk";
+    private static final String LAYER_CACHE = "layer";
+
+    /**
+     * Incremented whenever a facet layer configuration changes
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    /**
+     * Incremented whenever the world configuration changes, so that regions that were
+     * created before are not stored. Only incremented while holding {@link #regionLock}.
+     */
+    private final AtomicInteger worldRevision = new AtomicInteger();
+
+    /**
+     * Guards invalidations against regions and layer buffers that are stored concurrently.
+     * An invalidation updates regions, layer revisions and the layer cache before it
+     * increments the generation, all while holding this lock.
+     */
+    private final Object regionLock = new Object();
+
+    /**
+     * Incremented per layer whenever the layer's configuration changes.
+     * Visibility and order changes affect only the composite, not the layer buffers.
+     */
+    private final Map<FacetLayer, AtomicInteger> layerRevisions = new IdentityHashMap<>();
+
+    /**
+     * The visibility of the layers at the time of the last change notification
+     */
+    private final Map<FacetLayer, Boolean> layerVisibility = new HashMap<>();
+
+    /**
+     * The order of the layers at the time of the last change notification
+     */
+    private final List<FacetLayer> layerOrder;
+
+    /**
+     * Regions by packed tile key
+     */
+    private final TileMap<TileRegion> regionCache;
+
+    /**
+     * Regions that are currently created - concurrent requests for the same tile wait for them
+     */
+    private final ConcurrentMap<TileKey, CompletableFuture<TileRegion>> pendingRegions = new ConcurrentHashMap<>();
+
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    /**
+     * Tile images by packed tile key
+     */
+    private final TileMap<TileImage> imageCache;
+
+    /**
+     * The rendered output of individual layers, stamped with the layer revision
+     */
+    private final Cache<LayerTileKey, TileImage> layerCache;
+
+    private final FacetDependencyGraph facetGraph;
+
+    /**
+     * Tile images that were evicted from the heap cache
+     */
+    private final OffHeapTileStore offHeapTiles;
+
+    private final DiskTileCache diskCache;
+
+    /**
+     * The hash of the world generator's and the viewer's code (e.g. jar files)
+     */
+    private final String codeHash;
+
+    /**
+     * The fingerprint of the current layer configuration
+     */
+    private volatile String fingerprint;
+
+    private final WorldGenerator worldGen;
+
+    private final List<FacetLayer> facetLayers;
+
+    private final Collection<Observer<TilePipeline>> observers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param wg the world generator to use
+     * @param facetLayers the facet config (must be thread-safe)
+     * @param regionCacheMB the memory budget for cached regions in MB
+     * @param imageCacheMB the memory budget for cached tile images (composites and layer buffers) in MB
+     * @param offHeapCacheMB the memory budget for tile images outside of the Java heap in MB (0 to disable it)
+     * @param diskCacheDir the folder for persistent tiles or <code>null</code> to disable it
+     */
+    public TilePipeline(WorldGenerator wg, List<FacetLayer> facetLayers, int regionCacheMB, int imageCacheMB,
+            int offHeapCacheMB, Path diskCacheDir) {
+        this.worldGen = wg;
+        this.facetLayers = facetLayers;
+        this.layerOrder = new ArrayList<>(facetLayers);
+
+        for (FacetLayer layer : facetLayers) {
+            layerRevisions.put(layer, new AtomicInteger());
+            layerVisibility.put(layer, layer.isVisible());
+        }
+
+        facetGraph = FacetDependencyGraph.create(wg.getWorld());
+        codeHash = TileFingerprint.hashCodeSource(wg.getClass()) + "/" + TileFingerprint.hashViewerCode();
+        fingerprint = TileFingerprint.compute(wg, facetLayers, codeHash);
+        offHeapTiles = new OffHeapTileStore(TILE_SIZE_X, TILE_SIZE_Y, offHeapCacheMB);
+        diskCache = new DiskTileCache(diskCacheDir, TILE_SIZE_X, TILE_SIZE_Y);
+        diskCache.open(fingerprint, generation.get());
+
+        // weights are measured in KB to avoid integer overflows
+        // new regions are empty - they are weighed by the facets that the visible layers will compute
+        ToIntFunction<TileRegion> regionWeigher = region -> (int) (MemoryEstimates.estimate(region, getVisibleFacets()) / 1024);
+        ToIntFunction<TileImage> imageWeigher = tile -> (int) (MemoryEstimates.estimate(tile.getImage()) / 1024);
+        Weigher<LayerTileKey, TileImage> layerWeigher = (key, tile) -> (int) (MemoryEstimates.estimate(tile.getImage()) / 1024);
+
+        // layer buffers have an alpha channel and there are several per tile
+        long layerCacheKB = imageCacheMB * 1024L * 3 / 4;
+
+        RemovalListener<LayerTileKey, TileImage> layerEvictions = n -> onRemoval(n, LAYER_CACHE, n.getKey().getTile());
+
+        regionCache = new TileMap<>(regionCacheMB * 1024L, regionWeigher, (key, region) -> evictionEvent(REGION_CACHE, key));
+        imageCache = new TileMap<>(imageCacheMB * 1024L - layerCacheKB, imageWeigher, this::spill);
+        layerCache = CacheBuilder.newBuilder()
+                .maximumWeight(layerCacheKB)
+                .weigher(layerWeigher)
+                .removalListener(layerEvictions)
+                .build();
+
+        for (FacetLayer layer : facetLayers) {
+            layer.addObserver(this::onLayerChanged);
+        }
+
+        metrics.register();
+    }
+
+    /**
+     * @param obs the observer that is notified whenever the config generation changes
+     */
+    public void addObserver(Observer<TilePipeline> obs) {
+        observers.add(obs);
+    }
+
+    /**
+     * @param obs the observer to remove
+     */
+    public void removeObserver(Observer<TilePipeline> obs) {
+        observers.remove(obs);
+    }
+
+    /**
+     * @return the stage timers of this pipeline
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the current config generation
+     */
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return the fingerprint of the world generator and the current layer configuration
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the (thread-safe) list of facet layers
+     */
+    public List<FacetLayer> getFacetLayers() {
+        return facetLayers;
+    }
+
+    /**
+     * @param key the tile key
+     * @return the region of that tile (blocks until it is available)
+     */
+    public TileRegion getRegion(TileKey key) {
+        long packed = key.pack();
+        TileRegion region = regionCache.get(packed);
+        if (region != null) {
+            return region;
+        }
+
+        CompletableFuture<TileRegion> future = new CompletableFuture<>();
+        CompletableFuture<TileRegion> pending = pendingRegions.putIfAbsent(key, future);
+        if (pending != null) {
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        try {
+            // the region might have been stored right before the future was registered
+            region = regionCache.get(packed);
+            if (region == null) {
+                int revision = worldRevision.get();
+                long start = System.nanoTime();
+                region = createRegion(key);
+                metrics.getTimer(PipelineMetrics.REGION).recordSince(start);
+                if (key.getLevel() <= MAX_LEVEL) {
+                    synchronized (regionLock) {
+                        // the world could have been invalidated while the region was created
+                        if (worldRevision.get() == revision) {
+                            regionCache.put(packed, region);
+                        }
+                    }
+                }
+            }
+            future.complete(region);
+            return region;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingRegions.remove(key, future);
+        }
+    }
+
+    /**
+     * Level-0 tiles are generated at full resolution, so their regions provide all facets.
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @return the level-0 region of that tile (blocks until it is available)
+     */
+    public Region getFullRegion(int tileX, int tileY) {
+        return (ThreadSafeRegion) getRegion(new TileKey(0, tileX, tileY));
+    }
+
+    /**
+     * @return the number of tile images in the cache
+     */
+    public int getCachedTileCount() {
+        return imageCache.size();
+    }
+
+    /**
+     * Looks up the memory cache first, the off-heap store second and the disk cache third.
+     * @param key the tile key
+     * @return the cached image (possibly outdated) or <code>null</code>
+     */
+    TileImage getCachedImage(TileKey key) {
+        return getCachedImage(key.pack());
+    }
+
+    /**
+     * Looks up the memory cache first, the off-heap store second and the disk cache third.
+     * Memory cache hits do not allocate.
+     * @param key the packed tile key
+     * @return the cached image (possibly outdated) or <code>null</code>
+     */
+    TileImage getCachedImage(long key) {
+        TileImage cached = imageCache.get(key);
+        cacheEvent(MEMORY_CACHE, key, cached != null);
+        if (cached == null) {
+            cached = unspill(key);
+        }
+        if (cached == null) {
+            int stamp = generation.get();
+            BufferedImage stored = diskCache.read(stamp, TileKey.unpack(key));
+            cacheEvent(DISK_CACHE, key, stored != null);
+            if (stored != null) {
+                cached = new TileImage(stored, stamp);
+                imageCache.put(key, cached);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Looks up the memory cache only and does not emit cache events. This never blocks on I/O,
+     * so it can be called on the event dispatch thread.
+     * @param key the packed tile key
+     * @return the cached image (possibly outdated) or <code>null</code>
+     */
+    TileImage getMemoryImage(long key) {
+        return imageCache.get(key);
+    }
+
+    /**
+     * @return the keys of all cached images up to {@link #MAX_LEVEL} that belong to an older config generation
+     */
+    List<TileKey> getOutdatedTiles() {
+        int current = generation.get();
+        List<TileKey> result = new ArrayList<>();
+        for (long key : imageCache.keys()) {
+            TileImage cached = imageCache.get(key);
+            // tiles above the highest level are never displayed
+            if (cached != null && cached.getGeneration() < current && TileKey.levelOf(key) <= MAX_LEVEL) {
+                result.add(TileKey.unpack(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores an image unless a newer one exists already.
+     * @param key the tile key
+     * @param image the image
+     * @param stamp the config generation that was used to render the image
+     */
+    void putImage(TileKey key, BufferedImage image, int stamp) {
+        imageCache.merge(key.pack(), new TileImage(image, stamp), TilePipeline::newer);
+    }
+
+    private static TileImage newer(TileImage prev, TileImage next) {
+        return (prev.getGeneration() <= next.getGeneration()) ? next : prev;
+    }
+
+    /**
+     * Moves an image that was evicted from the heap cache to the off-heap store
+     * @param key the packed tile key
+     * @param tile the evicted image
+     */
+    private void spill(long key, TileImage tile) {
+        evictionEvent(MEMORY_CACHE, key);
+        offHeapTiles.write(TileKey.unpack(key), tile);
+    }
+
+    /**
+     * Moves an image from the off-heap store back to the heap cache
+     * @param key the packed tile key
+     * @return the image (possibly outdated) or <code>null</code> if not stored off-heap
+     */
+    private TileImage unspill(long key) {
+        TileImage stored = offHeapTiles.take(TileKey.unpack(key));
+        cacheEvent(OFF_HEAP_CACHE, key, stored != null);
+        if (stored == null) {
+            return null;
+        }
+        imageCache.merge(key, stored, TilePipeline::newer);
+        return stored;
+    }
+
+    /**
+     * Returns a cached tile if it is up-to-date. Otherwise, the tile is rendered for
+     * the current config generation. This method blocks until the tile is available.
+     * @param key the tile key
+     * @return the tile image
+     */
+    public BufferedImage getTile(TileKey key) {
+        while (true) {
+            int stamp = generation.get();
+            TileImage cached = getCachedImage(key);
+            if (cached != null && cached.getGeneration() == stamp) {
+                return cached.getImage();
+            }
+            BufferedImage image = renderTile(key, stamp);
+            if (image != null && stamp == generation.get()) {
+                putImage(key, image, stamp);
+                return image;
+            }
+            // the config has changed while rendering - try again
+        }
+    }
+
+    /**
+     * Drops all regions and layer buffers. Everything is updated before the generation
+     * is incremented in the same critical section, so tiles of the new generation never
+     * see old regions, old layer revisions or old layer buffers. Layer buffers of older
+     * generations are stored only while holding the same lock
+     * (see {@link #rasterize(TileKey, int, TileRegion)}).
+     */
+    public void invalidateWorld() {
+        synchronized (regionLock) {
+            pendingRegions.clear();
+            regionCache.clear();
+            worldRevision.incrementAndGet();
+            for (AtomicInteger revision : layerRevisions.values()) {
+                revision.incrementAndGet();
+            }
+            layerCache.invalidateAll();
+            generation.incrementAndGet();
+        }
+        publishGeneration();
+    }
+
+    /**
+     * Invalidates only the facets that depend on the given world config component.
+     * Cached regions are replaced by new ones that retain all other facets. As in
+     * {@link #invalidateWorld()}, regions and layer revisions are updated before the
+     * generation is incremented in the same critical section.
+     * @param changed the world config component that has changed
+     */
+    public void invalidateWorld(Component changed) {
+        Set<Class<? extends WorldFacet>> dirty = facetGraph.getAffectedFacets(changed);
+        if (dirty == null) {
+            invalidateWorld();
+            return;
+        }
+
+        logger.debug("Config change affects {}", dirty);
+
+        synchronized (regionLock) {
+            pendingRegions.clear();
+            for (long key : regionCache.keys()) {
+                TileRegion region = regionCache.get(key);
+                if (region != null) {
+                    TileRegion retained = region.retain(worldGen.getWorld(), type -> !dirty.contains(type), facetGraph);
+                    regionCache.replace(key, region, retained);
+                }
+            }
+            worldRevision.incrementAndGet();
+            for (FacetLayer layer : facetLayers) {
+                if (dirty.contains(layer.getFacetClass())) {
+                    layerRevisions.get(layer).incrementAndGet();
+                }
+            }
+            generation.incrementAndGet();
+        }
+
+        publishGeneration();
+    }
+
+    /**
+     * Evicts half of the regions and layer buffers and a quarter of the images,
+     * starting with those that are farthest away.
+     * @param distanceFunc the distance of a tile to the area of interest
+     */
+    public void shrinkCaches(ToDoubleFunction<TileKey> distanceFunc) {
+        int regions = evictFarthest(regionCache, 0.5f, distanceFunc, (key, region) -> { });
+        int buffers = evictFarthest(layerCache, 0.5f, key -> distanceFunc.applyAsDouble(key.getTile()));
+        // the images are moved off-heap
+        int images = evictFarthest(imageCache, 0.25f, distanceFunc, this::spill);
+        logger.info("Evicted {} regions, {} layer buffers and {} tile images from the cache ({} tiles off-heap)",
+                regions, buffers, images, offHeapTiles.size());
+    }
+
+    private static void cacheEvent(String cache, TileKey key, boolean hit) {
+        cacheEvent(cache, key.pack(), hit);
+    }
+
+    private static void cacheEvent(String cache, long key, boolean hit) {
+        JfrEvents.cacheAccess(TileKey.levelOf(key), TileKey.xOf(key), TileKey.yOf(key), cache, hit);
+    }
+
+    private static void evictionEvent(String cache, long key) {
+        JfrEvents.cacheEviction(TileKey.levelOf(key), TileKey.xOf(key), TileKey.yOf(key), cache);
+    }
+
+    private static void onRemoval(RemovalNotification<?, ?> notification, String cache, TileKey key) {
+        if (notification.wasEvicted()) {
+            evictionEvent(cache, key.pack());
+        }
+    }
+
+    private static <V> int evictFarthest(TileMap<V> map, float fraction, ToDoubleFunction<TileKey> distanceFunc,
+            TileMap.EvictionListener<? super V> listener) {
+        List<TileKey> keys = new ArrayList<>();
+        for (long key : map.keys()) {
+            keys.add(TileKey.unpack(key));
+        }
+        Comparator<TileKey> distance = Comparator.comparingDouble(distanceFunc);
+        keys.sort(distance.reversed());
+        int count = (int) (keys.size() * fraction);
+        for (TileKey key : keys.subList(0, count)) {
+            V value = map.remove(key.pack());
+            if (value != null) {
+                listener.onEviction(key.pack(), value);
+            }
+        }
+        return count;
+    }
+
+    private static <K> int evictFarthest(Cache<K, ?> cache, float fraction, ToDoubleFunction<K> distanceFunc) {
+        List<K> keys = new ArrayList<>(cache.asMap().keySet());
+        Comparator<K> distance = Comparator.comparingDouble(distanceFunc);
+        keys.sort(distance.reversed());
+        int count = (int) (keys.size() * fraction);
+        cache.invalidateAll(keys.subList(0, count));
+        return count;
+    }
+
+    @Override
+    public void close() {
+        offHeapTiles.close();
+        diskCache.close();
+        metrics.close();
+    }
+
+    /**
+     * Visibility and order changes only require new composites, all other
+     * changes also invalidate the buffers of the layer that has changed.
+     * Layer notifications are expected to come from a single thread.
+     * @param layer the layer that has changed
+     */
+    private synchronized void onLayerChanged(FacetLayer layer) {
+        boolean visibilityChanged = layerVisibility.put(layer, layer.isVisible()) != layer.isVisible();
+        boolean orderChanged = !layerOrder.equals(facetLayers);
+
+        if (orderChanged) {
+            layerOrder.clear();
+            layerOrder.addAll(facetLayers);
+        }
+
+        synchronized (regionLock) {
+            if (!visibilityChanged && !orderChanged) {
+                layerRevisions.get(layer).incrementAndGet();
+            }
+            generation.incrementAndGet();
+        }
+
+        publishGeneration();
+    }
+
+    /**
+     * Updates the fingerprint and notifies all observers of the current generation.
+     * All cached tiles become outdated. Tiles that are currently rendered pick up
+     * the new configuration when they are run again.
+     */
+    private void publishGeneration() {
+        int current = generation.get();
+
+        fingerprint = TileFingerprint.compute(worldGen, facetLayers, codeHash);
+        diskCache.switchTo(fingerprint, current);
+
+        for (Observer<TilePipeline> obs : observers) {
+            obs.update(this);
+        }
+    }
+
+    /**
+     * Regions of higher pyramid levels sample every n-th block of the tile area,
+     * so they have the same number of samples as level-0 regions.
+     * @param key the tile key
+     * @return a new thread-safe region
+     */
+    private TileRegion createRegion(TileKey key) {
+
+        int vertChunks = 4; // 4 chunks high (relevant for trees, etc)
+
+        int scale = key.getScale();
+        int sizeX = TILE_SIZE_X * scale;
+        int sizeZ = TILE_SIZE_Y * scale;
+        int height = vertChunks * ChunkConstants.SIZE_Y;
+        Region3i area3d = Region3i.createFromMinAndSize(new Vector3i(key.getX() * sizeX, 0, key.getY() * sizeZ),
+                new Vector3i(sizeX, height, sizeZ));
+        World world = worldGen.getWorld();
+
+        Span event = JfrEvents.regionCreation(key.getLevel(), key.getX(), key.getY(), 0);
+
+        TileRegion region;
+        if (key.getLevel() > 0) {
+            region = new SampledRegion(world, area3d, scale);
+        } else {
+            // The region needs to be thread-safe, since the rendering of the tooltip
+            // might access Region.getFacet() at the same time as a thread from the thread pool
+            // that uses it to render to a BufferedImage.
+            // This is often irrelevant, but composed facets such as Perlin's surface height facet,
+            // which consists of the ground layer plus hills and mountains plus rivers
+            // the method could return a partly created facet if accessed in parallel.
+            region = new ThreadSafeRegion(world.getWorldData(area3d));
+        }
+
+        event.end();
+        return region;
+    }
+
+    /**
+     * Renders a tile at any pyramid level. Tiles of higher levels are downsampled
+     * composites of their four children if these are available already. Otherwise,
+     * they are generated at reduced sampling - children are never rendered for that.
+     * @param key the tile key
+     * @param stamp the config generation to render
+     * @return the image or <code>null</code> if the config generation has changed meanwhile
+     */
+    BufferedImage renderTile(TileKey key, int stamp) {
+        return renderTile(key, stamp, null);
+    }
+
+    /**
+     * @param key the tile key
+     * @param stamp the config generation to use
+     * @param generated the region as provided by {@link #generate(TileKey)} or <code>null</code>
+     * @return the tile image or <code>null</code> if the config has changed in the meantime
+     */
+    BufferedImage renderTile(TileKey key, int stamp, TileRegion generated) {
+        TileImage cached = imageCache.get(key.pack());
+        boolean upToDate = cached != null && cached.getGeneration() == stamp;
+        cacheEvent(MEMORY_CACHE, key, upToDate);
+        if (upToDate) {
+            return cached.getImage();
+        }
+
+        if (cached == null) {
+            TileImage spilled = unspill(key.pack());
+            if (spilled != null && spilled.getGeneration() == stamp) {
+                return spilled.getImage();
+            }
+        }
+
+        BufferedImage image = diskCache.read(stamp, key);
+        cacheEvent(DISK_CACHE, key, image != null);
+        if (image != null) {
+            return image;
+        }
+
+        Span event = JfrEvents.tileRender(key.getLevel(), key.getX(), key.getY(), stamp);
+        long start = System.nanoTime();
+        BufferedImage[] children = getChildImages(key, stamp);
+        if (children != null) {
+            image = composite(children);
+        } else {
+            image = rasterize(key, stamp, generated);
+        }
+        metrics.getTimer(PipelineMetrics.TILE).recordSince(start);
+        event.end();
+
+        if (image != null) {
+            diskCache.write(stamp, key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Looks up the memory cache only - children are not rendered or loaded from disk.
+     * @param key the tile key
+     * @param stamp the config generation
+     * @return the up-to-date images of all four children (row by row) or <code>null</code> if one is missing
+     */
+    private BufferedImage[] getChildImages(TileKey key, int stamp) {
+        if (key.getLevel() == 0) {
+            return null;
+        }
+
+        BufferedImage[] children = new BufferedImage[4];
+        for (int dy = 0; dy < 2; dy++) {
+            for (int dx = 0; dx < 2; dx++) {
+                TileImage child = imageCache.get(key.getChild(dx, dy).pack());
+                if (child == null || child.getGeneration() != stamp) {
+                    return null;
+                }
+                children[dy * 2 + dx] = child.getImage();
+            }
+        }
+        return children;
+    }
+
+    private static BufferedImage composite(BufferedImage[] children) {
+        int halfX = TILE_SIZE_X / 2;
+        int halfY = TILE_SIZE_Y / 2;
+
+        BufferedImage image = new BufferedImage(TILE_SIZE_X, TILE_SIZE_Y, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+
+        // bi-linear interpolation at exactly 50% averages 2x2 pixel blocks
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+
+        for (int i = 0; i < children.length; i++) {
+            g.drawImage(children[i], (i % 2) * halfX, (i / 2) * halfY, halfX, halfY, null);
+        }
+        g.dispose();
+
+        return image;
+    }
+
+    /**
+     * @param key the tile key
+     * @return true if the region and all facets that are required to render the tile are
+     * available, so that the tile can be rendered without generating any facets
+     */
+    boolean isGenerated(TileKey key) {
+        if (getChildImages(key, generation.get()) != null) {
+            return true;
+        }
+
+        TileRegion region = regionCache.get(key.pack());
+        for (FacetLayer layer : facetLayers) {
+            if (layer.isVisible() && isOutdated(layer, key)) {
+                if (region == null || !region.isComputed(layer.getFacetClass())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private List<Class<? extends WorldFacet>> getVisibleFacets() {
+        List<Class<? extends WorldFacet>> facets = new ArrayList<>();
+        for (FacetLayer layer : facetLayers) {
+            if (layer.isVisible()) {
+                facets.add(layer.getFacetClass());
+            }
+        }
+        return facets;
+    }
+
+    /**
+     * The generation stage: retrieves the region of a tile and computes the facets of
+     * all visible layers that need to be rendered. Nothing is generated for tiles
+     * that can be composed from their children.
+     * @param key the tile key
+     * @return the region or <code>null</code> if the tile is composed from its children
+     */
+    TileRegion generate(TileKey key) {
+        if (getChildImages(key, generation.get()) != null) {
+            return null;
+        }
+
+        TileRegion region = getRegion(key);
+        for (FacetLayer layer : facetLayers) {
+            if (layer.isVisible() && isOutdated(layer, key)) {
+                prepareFacet(region, layer.getFacetClass());
+            }
+        }
+
+        // the region has grown by the computed facets - re-inserting the same instance updates its weight
+        regionCache.replace(key.pack(), region, region);
+        return region;
+    }
+
+    private boolean isOutdated(FacetLayer layer, TileKey key) {
+        TileImage buffer = layerCache.getIfPresent(new LayerTileKey(layer, key));
+        return buffer == null || buffer.getGeneration() != layerRevisions.get(layer).get();
+    }
+
+    /**
+     * Computes the facet of a layer before the layer is rendered (unless it is known already),
+     * so that facet generation and rasterization are measured separately. Facets that
+     * are required by this facet and not yet computed are attributed to it.
+     */
+    private void prepareFacet(TileRegion region, Class<? extends WorldFacet> facetClass) {
+        if (!region.isComputed(facetClass)) {
+            long start = System.nanoTime();
+            region.computeFacet(facetClass);
+            metrics.getFacetTimer(facetClass).recordSince(start);
+        }
+    }
+
+    /**
+     * Composes the buffers of all visible layers in table order.
+     * Only the buffers that are missing or outdated are rendered.
+     * Layer buffers are stored only if the generation has not changed while rendering.
+     * @param key the tile key
+     * @param stamp the config generation to render - it must not be newer than the generated region
+     * @param generated the generated region or <code>null</code> to retrieve it on demand
+     * @return an image of that tile or <code>null</code> if the config generation has changed meanwhile
+     */
+    private BufferedImage rasterize(TileKey key, int stamp, TileRegion generated) {
+
+        BufferedImage image = new BufferedImage(TILE_SIZE_X, TILE_SIZE_Y, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        TileRegion region = generated;
+
+        try {
+            for (FacetLayer layer : facetLayers) {
+                // stop early if the result would be outdated anyway
+                if (generation.get() != stamp) {
+                    return null;
+                }
+                if (layer.isVisible()) {
+                    LayerTileKey layerKey = new LayerTileKey(layer, key);
+                    int revision = layerRevisions.get(layer).get();
+                    TileImage buffer = layerCache.getIfPresent(layerKey);
+                    boolean upToDate = buffer != null && buffer.getGeneration() == revision;
+                    cacheEvent(LAYER_CACHE, key, upToDate);
+                    if (!upToDate) {
+                        // the region is retrieved only if at least one layer needs to be rendered
+                        if (region == null) {
+                            region = getRegion(key);
+                        }
+                        prepareFacet(region, layer.getFacetClass());
+                        BufferedImage layerImage = new BufferedImage(TILE_SIZE_X, TILE_SIZE_Y, BufferedImage.TYPE_INT_ARGB);
+                        Span event = JfrEvents.layerRender(key.getLevel(), key.getX(), key.getY(),
+                                layer.toString(), layer.getFacetClass());
+                        long start = System.nanoTime();
+                        region.render(layer, layerImage);
+                        metrics.getLayerTimer(layer).recordSince(start);
+                        event.end();
+                        // layers such as biome maps have only a few colors - only alpha compositing
+                        // has native loops for indexed images, additive layers keep their int pixels
+                        if (layer.getComposite() instanceof AlphaComposite) {
+                            layerImage = PaletteImages.compact(layerImage);
+                        }
+                        buffer = new TileImage(layerImage, revision);
+                        synchronized (regionLock) {
+                            // the region could be outdated - the revision might be new already
+                            if (generation.get() != stamp) {
+                                return null;
+                            }
+                            layerCache.put(layerKey, buffer);
+                        }
+                    }
+                    g.setComposite(layer.getComposite());
+                    g.drawImage(buffer.getImage(), 0, 0, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        if (region != null) {
+            // the region has grown by the facets that were computed for rendering
+            // re-inserting the same instance updates its weight
+            regionCache.replace(key.pack(), region, region);
+        }
+
+        return image;
+    }
+}
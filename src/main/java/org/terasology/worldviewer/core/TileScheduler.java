@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.math.Rect2i;
+import org.terasology.worldviewer.camera.CameraListener;
+
+/**
+ * Processes {@link TileTask}s in the order of their distance to the center
+ * of the visible area. Preview tasks are processed before and speculative tasks
+ * after all regular tasks. Whenever the camera moves, pending tasks are re-prioritized
+ * and those that have left the visible area (plus a margin) or belong to a different
+ * pyramid level are dropped. Previews are kept as long as they belong to a higher level.
+ * @author Martin Steiger
+ */
+public class TileScheduler implements CameraListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileScheduler.class);
+
+    private static final Comparator<Runnable> PRIORITY_ORDER = Comparator
+            .comparing((Runnable r) -> ((TileTask) r).isSpeculative())
+            .thenComparing(r -> !((TileTask) r).isPreview())
+            .thenComparingDouble(r -> ((TileTask) r).getPriority());
+
+    private final PriorityBlockingQueue<Runnable> workQueue = new PriorityBlockingQueue<>(256, PRIORITY_ORDER);
+    private final ThreadPoolExecutor threadPool;
+
+    private final Supplier<Rect2i> visibleTiles;
+    private final IntSupplier visibleLevel;
+    private final Consumer<TileTask> dropListener;
+
+    private final int margin;
+
+    /**
+     * @param numThreads the number of worker threads
+     * @param visibleTiles provides the currently visible area in level-0 tile coordinates
+     * @param visibleLevel provides the currently visible pyramid level
+     * @param margin the number of visible tiles around the visible area that are not dropped
+     * @param dropListener is notified about every dropped task
+     */
+    public TileScheduler(int numThreads, Supplier<Rect2i> visibleTiles, IntSupplier visibleLevel,
+            int margin, Consumer<TileTask> dropListener) {
+        this.visibleTiles = visibleTiles;
+        this.visibleLevel = visibleLevel;
+        this.margin = margin;
+        this.dropListener = dropListener;
+
+        // the pool size is fixed, because the queue is unbounded anyway
+        threadPool = new ThreadPoolExecutor(numThreads, numThreads,
+                1L, TimeUnit.SECONDS, workQueue, Executors.defaultThreadFactory());
+
+        // tasks are re-inserted into the queue directly - this requires that all workers exist
+        threadPool.prestartAllCoreThreads();
+    }
+
+    /**
+     * @param task the task to schedule
+     */
+    public void execute(TileTask task) {
+        Rect2i visArea = visibleTiles.get();
+        task.setPriority(getDistanceSq(visArea, task.getKey()));
+        threadPool.execute(task);
+    }
+
+    /**
+     * Removes all pending tasks without notifying the drop listener
+     */
+    public void clear() {
+        workQueue.clear();
+    }
+
+    /**
+     * @return the number of tasks that is currently waiting for being processed
+     */
+    public int getPendingTasks() {
+        return workQueue.size();
+    }
+
+    /**
+     * @return the number of speculative tasks that is currently waiting for being processed
+     */
+    public int getPendingSpeculativeTasks() {
+        int count = 0;
+        for (Runnable r : workQueue) {
+            if (((TileTask) r).isSpeculative()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Attempts to stop all running tasks and drops all pending tasks
+     */
+    public void shutdownNow() {
+        threadPool.shutdownNow();
+    }
+
+    @Override
+    public void onPosChange() {
+        reprioritize();
+    }
+
+    @Override
+    public void onZoomChange() {
+        reprioritize();
+    }
+
+    /**
+     * Computes new priorities for all pending tasks and drops those
+     * that are too far away from the visible area. Speculative tasks
+     * that have become visible are turned into regular tasks.
+     */
+    public void reprioritize() {
+        Rect2i visArea = visibleTiles.get();
+        int level = visibleLevel.getAsInt();
+        int levelMargin = margin << level;
+        Rect2i keepArea = Rect2i.createFromMinAndMax(
+                visArea.minX() - levelMargin, visArea.minY() - levelMargin,
+                visArea.maxX() + levelMargin, visArea.maxY() + levelMargin);
+
+        List<Runnable> pending = new ArrayList<>(workQueue.size());
+        workQueue.drainTo(pending);
+
+        int dropped = 0;
+        for (Runnable r : pending) {
+            TileTask task = (TileTask) r;
+            TileKey key = task.getKey();
+            boolean levelMatches = key.getLevel() == level || (task.isPreview() && key.getLevel() > level);
+            if (levelMatches && overlaps(keepArea, key)) {
+                if (task.isSpeculative() && overlaps(visArea, key)) {
+                    task.setSpeculative(false);
+                }
+                task.setPriority(getDistanceSq(visArea, key));
+                workQueue.add(task);
+            } else {
+                dropListener.accept(task);
+                dropped++;
+            }
+        }
+
+        if (dropped > 0 && logger.isTraceEnabled()) {
+            logger.trace("Dropped {} of {} pending tiles", dropped, pending.size());
+        }
+    }
+
+    private static boolean overlaps(Rect2i area, TileKey key) {
+        int scale = key.getScale();
+        int minX = key.getX() * scale;
+        int minY = key.getY() * scale;
+        return minX <= area.maxX() && minX + scale > area.minX()
+            && minY <= area.maxY() && minY + scale > area.minY();
+    }
+
+    /**
+     * @param area the area in level-0 tile coordinates
+     * @param key the tile key
+     * @return the squared distance between the tile center and the center of the area in level-0 tiles
+     */
+    static float getDistanceSq(Rect2i area, TileKey key) {
+        float cx = (area.minX() + area.maxX()) * 0.5f;
+        float cy = (area.minY() + area.maxY()) * 0.5f;
+        float dx = (key.getX() + 0.5f) * key.getScale() - cx;
+        float dy = (key.getY() + 0.5f) * key.getScale() - cy;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves slippy-map tiles at <code>/{z}/{x}/{y}.png</code> from a {@link TilePipeline}.
+ * Zoom level <code>z = 0</code> is the most zoomed-out pyramid level, <code>z = MAX_LEVEL</code>
+ * is full resolution. Tile coordinates are tile indices (negative values are allowed).
+ * <p>
+ * Concurrent requests for the same tile are rendered only once. Tile responses carry
+ * an ETag that is derived from the layer config fingerprint.
+ * @author Martin Steiger
+ */
+public class TileServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TileServer.class);
+
+    private static final Pattern TILE_PATH = Pattern.compile("/(\\d+)/(-?\\d+)/(-?\\d+)\\.png");
+
+    /**
+     * The max. number of tiles that wait for a render thread before requests are rejected
+     */
+    private static final int MAX_QUEUED_TILES = 256;
+
+    private final TilePipeline pipeline;
+    private final HttpServer server;
+    private final ExecutorService httpPool;
+    private final ThreadPoolExecutor renderPool;
+
+    private final ConcurrentMap<TileKey, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param pipeline the tile pipeline to use
+     * @param port the local port to listen on
+     * @param numThreads the max. number of tiles that are rendered concurrently
+     * @throws IOException if the server socket cannot be opened
+     */
+    public TileServer(TilePipeline pipeline, int port, int numThreads) throws IOException {
+        this.pipeline = pipeline;
+
+        renderPool = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_TILES),
+                new ThreadFactoryBuilder().setNameFormat("tile-render-%d").setDaemon(true).build());
+
+        // http threads only wait for rendered tiles and write the response
+        httpPool = Executors.newFixedThreadPool(numThreads * 4,
+                new ThreadFactoryBuilder().setNameFormat("tile-http-%d").setDaemon(true).build());
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(httpPool);
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+        logger.info("Serving tiles at http://{}:{}/{z}/{x}/{y}.png",
+                server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        httpPool.shutdownNow();
+        renderPool.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+
+            Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+
+            TileKey key = toTileKey(matcher);
+            if (key == null) {
+                sendError(exchange, 400, "Tile out of range");
+                return;
+            }
+
+            String etag = "\"" + pipeline.getFingerprint() + "\"";
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Access-Control-Allow-Origin", "*");
+
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                setCacheHeaders(headers, etag);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] png;
+            try {
+                png = requestTile(key).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, 503, "Server is shutting down");
+                return;
+            } catch (ExecutionException e) {
+                // requests that joined a rejected tile are rejected as well
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    headers.set("Retry-After", "1");
+                    sendError(exchange, 503, "Too many pending tiles");
+                    return;
+                }
+                logger.warn("Could not render tile {}", key, e.getCause());
+                sendError(exchange, 500, "Could not render tile");
+                return;
+            }
+
+            setCacheHeaders(headers, etag);
+            headers.set("Content-Type", "image/png");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, png.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(png);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Joins a pending render task for the same tile or submits a new one.
+     * If too many tiles are pending, the future fails with a {@link RejectedExecutionException}.
+     */
+    private CompletableFuture<byte[]> requestTile(TileKey key) {
+        CompletableFuture<byte[]> created = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = pending.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            renderPool.execute(() -> {
+                try {
+                    created.complete(encode(pipeline.getTile(key)));
+                } catch (Throwable e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    pending.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    /**
+     * Clients must revalidate, since the layer config may change at any time
+     */
+    private static void setCacheHeaders(Headers headers, String etag) {
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", "no-cache");
+    }
+
+    /**
+     * @return the tile key or <code>null</code> if the tile cannot be packed or leaves the int range of world coordinates
+     */
+    private static TileKey toTileKey(Matcher matcher) {
+        try {
+            int z = Integer.parseInt(matcher.group(1));
+            int x = Integer.parseInt(matcher.group(2));
+            int y = Integer.parseInt(matcher.group(3));
+            if (z > TilePipeline.MAX_LEVEL) {
+                return null;
+            }
+            if (x < TileKey.MIN_COORD || x > TileKey.MAX_COORD || y < TileKey.MIN_COORD || y > TileKey.MAX_COORD) {
+                return null;
+            }
+            int level = TilePipeline.MAX_LEVEL - z;
+            long sizeX = (long) TilePipeline.TILE_SIZE_X << level;
+            long sizeY = (long) TilePipeline.TILE_SIZE_Y << level;
+            if (!isInWorld(x, sizeX) || !isInWorld(y, sizeY)) {
+                return null;
+            }
+            return new TileKey(level, x, y);
+        } catch (NumberFormatException e) {
+            // out of int range
+            return null;
+        }
+    }
+
+    /**
+     * @param coord the tile coordinate
+     * @param size the tile size in blocks
+     * @return true if all blocks of the tile have int world coordinates
+     */
+    private static boolean isInWorld(int coord, long size) {
+        return coord * size >= Integer.MIN_VALUE && (coord + 1) * size - 1 <= Integer.MAX_VALUE;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(16 * 1024);
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+}
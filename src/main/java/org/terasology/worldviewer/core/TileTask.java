@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+/**
+ * A unit of work that is related to a single tile.
+ * The priority is assigned by the {@link TileScheduler}.
+ * @author Martin Steiger
+ */
+public abstract class TileTask implements Runnable {
+
+    private final TileKey key;
+
+    private final long creationTime = System.nanoTime();
+
+    private volatile float priority;
+
+    private volatile boolean speculative;
+
+    private final boolean preview;
+
+    /**
+     * @param key the tile key
+     * @param speculative true if the tile is not visible (yet), but likely to be needed soon
+     * @param preview true if the tile is a coarse placeholder for tiles of a lower pyramid level
+     */
+    protected TileTask(TileKey key, boolean speculative, boolean preview) {
+        this.key = key;
+        this.speculative = speculative;
+        this.preview = preview;
+    }
+
+    /**
+     * @return the tile key
+     */
+    public TileKey getKey() {
+        return key;
+    }
+
+    /**
+     * @return the creation time as provided by {@link System#nanoTime()}
+     */
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * @return the priority - smaller values are processed first
+     */
+    float getPriority() {
+        return priority;
+    }
+
+    /**
+     * Must not be called while the task is in the work queue
+     * @param priority the new priority - smaller values are processed first
+     */
+    void setPriority(float priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return true if the task is processed only after all regular tasks
+     */
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
+    /**
+     * @return true if the task renders a coarse placeholder that is processed before all other tasks
+     */
+    public boolean isPreview() {
+        return preview;
+    }
+
+    /**
+     * Must not be called while the task is in the work queue
+     * @param speculative true if the task should be processed only after all regular tasks
+     */
+    void setSpeculative(boolean speculative) {
+        this.speculative = speculative;
+    }
+}
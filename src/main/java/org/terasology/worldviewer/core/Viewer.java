@@ -22,55 +22,64 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.math.RoundingMode;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JComponent;
+import javax.swing.Timer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.math.Rect2i;
-import org.terasology.math.Region3i;
 import org.terasology.math.TeraMath;
 import org.terasology.math.Vector2i;
-import org.terasology.math.geom.Vector3i;
+import org.terasology.math.geom.ImmutableVector2f;
 import org.terasology.rendering.nui.HorizontalAlign;
-import org.terasology.world.chunks.ChunkConstants;
 import org.terasology.world.generation.Region;
-import org.terasology.world.generation.World;
-import org.terasology.world.generator.WorldGenerator;
-import org.terasology.worldviewer.ThreadSafeRegion;
+import org.terasology.worldviewer.TileRegion;
 import org.terasology.worldviewer.camera.Camera;
 import org.terasology.worldviewer.camera.CameraKeyController;
 import org.terasology.worldviewer.camera.CameraMouseController;
+import org.terasology.worldviewer.camera.CameraVelocityTracker;
 import org.terasology.worldviewer.camera.RepaintingCameraListener;
 import org.terasology.worldviewer.config.ViewConfig;
 import org.terasology.worldviewer.gui.CursorPositionListener;
 import org.terasology.worldviewer.gui.RepaintingMouseListener;
 import org.terasology.worldviewer.gui.Tooltip;
+import org.terasology.worldviewer.jfr.JfrEvents;
+import org.terasology.worldviewer.jfr.JfrEvents.Span;
 import org.terasology.worldviewer.layers.FacetLayer;
+import org.terasology.worldviewer.metrics.PipelineMetrics;
 import org.terasology.worldviewer.overlay.GridOverlay;
 import org.terasology.worldviewer.overlay.Overlay;
 import org.terasology.worldviewer.overlay.TextOverlay;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.math.IntMath;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * The main viewer component
@@ -80,42 +89,78 @@ public final class Viewer extends JComponent implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(Viewer.class);
 
-    private static final int TILE_SIZE_X = ChunkConstants.SIZE_X * 4;
-    private static final int TILE_SIZE_Y = ChunkConstants.SIZE_Z * 4;
+    private static final int TILE_SIZE_X = TilePipeline.TILE_SIZE_X;
+    private static final int TILE_SIZE_Y = TilePipeline.TILE_SIZE_Y;
 
     private static final long serialVersionUID = 4178713176841691478L;
 
     private final BufferedImage dummyImg;
     private final BufferedImage failedImg;
 
-    private final int numThreads = Runtime.getRuntime().availableProcessors();
-    private final LinkedBlockingQueue<Runnable> workQueue = new LinkedBlockingQueue<Runnable>();
-    private final ThreadPoolExecutor threadPool = new ThreadPoolExecutor(numThreads, numThreads * 2,
-            1L, TimeUnit.SECONDS, workQueue, Executors.defaultThreadFactory());
+    /**
+     * The number of tiles around the visible area that are still processed
+     */
+    private static final int TILE_MARGIN = 2;
 
-    private final CacheLoader<Vector2i, Region> regionLoader = new CacheLoader<Vector2i, Region>() {
+    /**
+     * The time span in seconds the camera movement is extrapolated to prefetch tiles
+     */
+    private static final float PREFETCH_LOOKAHEAD = 0.5f;
 
-        @Override
-        public Region load(final Vector2i tilePos) {
-            Region region = createRegion(tilePos);
-            return region;
-        }
-    };
+    /**
+     * The heap fill ratio after GC that triggers cache eviction
+     */
+    private static final double HEAP_PRESSURE_THRESHOLD = 0.85;
 
-    private final CacheLoader<Vector2i, BufferedImage> imageLoader = new CacheLoader<Vector2i, BufferedImage>() {
+    /**
+     * The min. time span in milliseconds between two repaints of completed tiles (about 60 Hz)
+     */
+    private static final int REPAINT_INTERVAL = 16;
 
-        @Override
-        public BufferedImage load(Vector2i pos) throws Exception {
-            threadPool.execute(new UpdateImageCache(pos));
-            return dummyImg;
-        }
-    };
+    /**
+     * The number of pyramid levels above the visible level at which coarse previews of missing tiles
+     * are rendered. A preview samples every 4th row of 4x4 visible tiles, so it costs a quarter of them.
+     * Previews do not exceed {@link TilePipeline#MAX_LEVEL}: sampled regions still generate every n-th row
+     * at full resolution, so coarser previews would not be cheaper than the tiles they stand in for.
+     */
+    private static final int PREVIEW_LEVELS = 2;
+
+    /**
+     * The number of threads that generate world regions
+     */
+    private final int numGenThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The number of threads that rasterize facet layers. Rasterization is fast compared
+     * to facet generation, so fewer threads suffice.
+     */
+    private final int numRasterThreads = Math.max(2, numGenThreads / 2);
+
+    /**
+     * The max. number of generated tiles that wait for the raster stage. Generation threads
+     * block when this is exceeded, so that generated regions don't pile up in memory.
+     */
+    private final Semaphore handoffPermits = new Semaphore(numRasterThreads * 4);
+
+    private final TileScheduler generationScheduler;
+    private final TileScheduler rasterScheduler;
 
-    private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, BufferedImage> imageCache;
+    /**
+     * Tiles that are either queued or currently being rendered
+     */
+    private final Set<TileKey> scheduledTiles = Sets.newConcurrentHashSet();
+
+    private final HeapPressureMonitor heapMonitor;
+
+    private final TilePipeline pipeline;
 
     private final Camera camera = new Camera();
-    private final WorldGenerator worldGen;
+    private final CameraVelocityTracker velocityTracker = new CameraVelocityTracker(camera);
+
+    /**
+     * The max. number of speculative tiles in the queue
+     */
+    private final int prefetchBudget;
 
     private final CursorPositionListener curPosListener;
 
@@ -127,20 +172,91 @@ public final class Viewer extends JComponent implements AutoCloseable {
     private final List<FacetLayer> facetLayers;
 
     /**
-     * @param wg the world generator to use
-     * @param facetLayers the facet config
+     * The area of completed tiles in world coordinates that has not been repainted yet.
+     * It is empty if there is none. Access is synchronized on the instance.
+     */
+    private final Rectangle dirtyArea = new Rectangle();
+
+    /**
+     * Repaints the dirty area once per repaint interval (single shot)
+     */
+    private final Timer repaintTimer = new Timer(REPAINT_INTERVAL, e -> repaintDirtyArea());
+
+    /**
+     * The rendered tiles of the previous frame - only accessed on the EDT
+     */
+    private VolatileImage backBuffer;
+
+    /**
+     * The camera zoom factor the back buffer was rendered for
+     */
+    private float bufferZoom;
+
+    /**
+     * The screen origin in world pixels the back buffer was rendered for
+     */
+    private int bufferOriginX;
+    private int bufferOriginY;
+
+    /**
+     * The area in world coordinates that has changed since the back buffer was rendered.
+     * Only accessed on the EDT.
+     */
+    private final Rectangle bufferDirtyArea = new Rectangle();
+
+    /**
+     * A single, high-priority thread that evaluates tooltip queries off the EDT.
+     * It is separate from the tile schedulers so that queries never wait behind queued tiles.
+     */
+    private final ExecutorService tooltipExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("tooltip").setDaemon(true).setPriority(Thread.MAX_PRIORITY).build());
+
+    /**
+     * Tooltip texts per world cell - entries of older pipeline generations are never hit again
+     */
+    private final Cache<TooltipKey, String> tooltipCache = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    /**
+     * The most recently requested tooltip that has not been computed yet
+     */
+    private final AtomicReference<TooltipKey> pendingTooltip = new AtomicReference<>();
+
+    /**
+     * The last complete tooltip and its cell, so that it is not formatted for every frame (EDT only)
+     */
+    private TooltipKey lastTooltipKey;
+    private String lastTooltip;
+
+    /**
+     * The visible area in world coordinates of the last frame. It is written on the EDT,
+     * so that other threads do not have to access the camera or the component size.
+     */
+    private volatile Rect2i lastVisibleArea = Rect2i.createFromMinAndSize(0, 0, 0, 0);
+
+    /**
+     * @param pipeline the tile pipeline that provides the tile images
      * @param viewConfig the view config
-     * @param cacheSize maximum number of cached tiles
+     * @param prefetchBudget the max. number of queued tiles ahead of the camera movement (0 to disable)
      */
-    public Viewer(WorldGenerator wg, List<FacetLayer> facetLayers, ViewConfig viewConfig, int cacheSize) {
-        this.worldGen = wg;
+    public Viewer(TilePipeline pipeline, ViewConfig viewConfig, int prefetchBudget) {
+        this.pipeline = pipeline;
+        this.prefetchBudget = prefetchBudget;
         this.viewConfig = viewConfig;
-        this.facetLayers = facetLayers;
+        this.facetLayers = pipeline.getFacetLayers();
 
-        regionCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(regionLoader);
-        imageCache = CacheBuilder.newBuilder().maximumSize(cacheSize).build(imageLoader);
+        dummyImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, null);
+        failedImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, "FAILED");
+
+        // dropped tiles keep their outdated image - they are re-scheduled once they are painted again
+        generationScheduler = new TileScheduler(numGenThreads, this::getVisibleTiles, this::getVisibleLevel,
+                TILE_MARGIN, this::onDropped);
+        rasterScheduler = new TileScheduler(numRasterThreads, this::getVisibleTiles, this::getVisibleLevel,
+                TILE_MARGIN, this::onDropped);
 
         camera.addListener(new RepaintingCameraListener(this));
+        camera.addListener(generationScheduler);
+        camera.addListener(rasterScheduler);
+        camera.addListener(velocityTracker);
         Vector2i camPos = viewConfig.getCamPos();
         camera.translate(camPos.getX(), camPos.getY());
         camera.setZoom(viewConfig.getZoomFactor());
@@ -179,13 +295,13 @@ public final class Viewer extends JComponent implements AutoCloseable {
         addMouseListener(repaintListener);
         addMouseMotionListener(repaintListener);
 
-        dummyImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, null);
-        failedImg = createStaticImage(TILE_SIZE_X, TILE_SIZE_Y, "FAILED");
+        repaintTimer.setRepeats(false);
 
-        // clear tile cache and repaint if any of the facet configs has changed
-        for (FacetLayer layer : facetLayers) {
-            layer.addObserver(l -> updateImageCache());
-        }
+        // update tile cache and repaint if any of the facet configs has changed
+        pipeline.addObserver(p -> updateImageCache());
+
+        // evict cached tiles if the heap is about to run out
+        heapMonitor = new HeapPressureMonitor(HEAP_PRESSURE_THRESHOLD, this::shrinkCaches);
     }
 
     private static BufferedImage createStaticImage(int width, int height, String text) {
@@ -210,14 +326,14 @@ public final class Viewer extends JComponent implements AutoCloseable {
      * @return the number of tiles that is currently waiting for being processed
      */
     public int getPendingTiles() {
-        return workQueue.size();
+        return generationScheduler.getPendingTasks() + rasterScheduler.getPendingTasks();
     }
 
     /**
      * @return the number of tile images in the cache
      */
     public int getCachedTiles() {
-        return (int) imageCache.size();
+        return pipeline.getCachedTileCount();
     }
 
     public Camera getCamera() {
@@ -231,18 +347,34 @@ public final class Viewer extends JComponent implements AutoCloseable {
 
     @Override
     public void paint(Graphics g1) {
+        long start = System.nanoTime();
         Graphics2D g = (Graphics2D) g1;
         AffineTransform orgTrans = g.getTransform();
 
         Rect2i visWorld = getVisibleArea(camera, getWidth(), getHeight());
-        Rect2i visChunks = toChunkArea(visWorld);
+        int level = getVisibleLevel();
+        Rect2i visTiles = toTileArea(visWorld, level);
+        float zoom = camera.getZoom();
+        lastVisibleArea = visWorld;
 
-        g.scale(camera.getZoom(), camera.getZoom());
-        g.translate(-visWorld.minX(), -visWorld.minY());
+        Span event = JfrEvents.paint(level, zoom, visTiles.width() * visTiles.height());
 
-        drawTiles(g, visChunks);
+        // the world is drawn on a grid of whole pixels, so that panning shifts the image by whole pixels
+        int originX = TeraMath.floorToInt(visWorld.minX() * zoom);
+        int originY = TeraMath.floorToInt(visWorld.minY() * zoom);
+
+        if (!paintBackBuffer(g, level, originX, originY)) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            renderTiles(g, clip, level, originX, originY);
+        }
+        prefetchTiles(visWorld, visTiles, level);
 
         // draw world overlays
+        g.translate(-originX, -originY);
+        g.scale(zoom, zoom);
         for (Overlay ovly : worldOverlays) {
             if (ovly.isVisible()) {
                 ovly.render(g, visWorld);
@@ -259,13 +391,134 @@ public final class Viewer extends JComponent implements AutoCloseable {
             }
         }
 
-        drawTooltip(g, visWorld);
+        drawTooltip(g, originX, originY);
+
+        pipeline.getMetrics().getTimer(PipelineMetrics.PAINT).recordSince(start);
+        event.end();
+    }
+
+    /**
+     * Brings the back buffer up-to-date and draws it. If only the camera position has changed,
+     * the buffer content is shifted and only the newly exposed strips are rendered.
+     * Zoom changes and lost buffer contents require a full redraw.
+     * @param g the graphics context of the component
+     * @param level the visible pyramid level
+     * @param originX the screen origin in world pixels
+     * @param originY the screen origin in world pixels
+     * @return false if no back buffer is available (e.g. the component is not displayable)
+     */
+    private boolean paintBackBuffer(Graphics2D g, int level, int originX, int originY) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        int width = getWidth();
+        int height = getHeight();
+        if (gc == null || width <= 0 || height <= 0) {
+            return false;
+        }
+
+        boolean full = camera.getZoom() != bufferZoom;
+        if (backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+            if (backBuffer != null) {
+                backBuffer.flush();
+            }
+            backBuffer = gc.createCompatibleVolatileImage(width, height);
+            full = true;
+        }
+
+        do {
+            int state = backBuffer.validate(gc);
+            if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+                backBuffer.flush();
+                backBuffer = gc.createCompatibleVolatileImage(width, height);
+            }
+            if (state != VolatileImage.IMAGE_OK) {
+                full = true;
+            }
+
+            Graphics2D bg = backBuffer.createGraphics();
+            try {
+                updateBackBuffer(bg, full, level, originX, originY, width, height);
+            } finally {
+                bg.dispose();
+            }
+            bufferZoom = camera.getZoom();
+            bufferOriginX = originX;
+            bufferOriginY = originY;
+
+            g.drawImage(backBuffer, 0, 0, null);
+
+            // if the content was lost in the meantime, everything needs to be rendered again
+            full = true;
+        } while (backBuffer.contentsLost());
+
+        return true;
     }
 
-    public void invalidateWorld() {
-        regionCache.invalidateAll();
-        updateImageCache();
-     }
+    private void updateBackBuffer(Graphics2D bg, boolean full, int level, int originX, int originY, int width, int height) {
+        int dx = originX - bufferOriginX;
+        int dy = originY - bufferOriginY;
+
+        if (full || Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            renderTiles(bg, new Rectangle(0, 0, width, height), level, originX, originY);
+            bufferDirtyArea.setSize(0, 0);
+            return;
+        }
+
+        if (dx != 0 || dy != 0) {
+            bg.copyArea(0, 0, width, height, -dx, -dy);
+
+            if (dx > 0) {
+                renderTiles(bg, new Rectangle(width - dx, 0, dx, height), level, originX, originY);
+            } else if (dx < 0) {
+                renderTiles(bg, new Rectangle(0, 0, -dx, height), level, originX, originY);
+            }
+            if (dy > 0) {
+                renderTiles(bg, new Rectangle(0, height - dy, width, dy), level, originX, originY);
+            } else if (dy < 0) {
+                renderTiles(bg, new Rectangle(0, 0, width, -dy), level, originX, originY);
+            }
+        }
+
+        if (!bufferDirtyArea.isEmpty()) {
+            Rectangle area = toScreenArea(bufferDirtyArea, originX, originY);
+            renderTiles(bg, area.intersection(new Rectangle(0, 0, width, height)), level, originX, originY);
+            bufferDirtyArea.setSize(0, 0);
+        }
+    }
+
+    /**
+     * Draws the tiles that intersect the given screen area, clipped to that area.
+     * @param g the graphics context in screen coordinates
+     * @param screenArea the screen area to draw
+     * @param level the visible pyramid level
+     * @param originX the screen origin in world pixels
+     * @param originY the screen origin in world pixels
+     */
+    private void renderTiles(Graphics2D g, Rectangle screenArea, int level, int originX, int originY) {
+        if (screenArea.isEmpty()) {
+            return;
+        }
+
+        AffineTransform orgTrans = g.getTransform();
+        Shape orgClip = g.getClip();
+        float zoom = camera.getZoom();
+
+        g.clip(screenArea);
+        g.translate(-originX, -originY);
+        g.scale(zoom, zoom);
+
+        int minX = TeraMath.floorToInt((screenArea.x + originX) / zoom);
+        int minY = TeraMath.floorToInt((screenArea.y + originY) / zoom);
+
+        // Compensate rounding errors by adding 2px, just like the visible area
+        int w = (int) (screenArea.width / zoom) + 2;
+        int h = (int) (screenArea.height / zoom) + 2;
+        Rect2i area = Rect2i.createFromMinAndSize(minX, minY, w, h);
+
+        drawTiles(g, toTileArea(area, level), level);
+
+        g.setTransform(orgTrans);
+        g.setClip(orgClip);
+    }
 
     @Override
     public void close() {
@@ -275,7 +528,42 @@ public final class Viewer extends JComponent implements AutoCloseable {
         viewConfig.setCamPos(new Vector2i(cx, cy));
         viewConfig.setZoomFactor(camera.getZoom());
 
-        threadPool.shutdownNow();
+        generationScheduler.shutdownNow();
+        rasterScheduler.shutdownNow();
+        tooltipExecutor.shutdownNow();
+        repaintTimer.stop();
+        if (backBuffer != null) {
+            backBuffer.flush();
+        }
+        heapMonitor.close();
+    }
+
+    /**
+     * Evicts cached data, starting with those that are farthest away from the visible area
+     * of the last frame. This is called on the JMX notification thread.
+     */
+    private void shrinkCaches() {
+        Rect2i visTiles = toTileArea(lastVisibleArea, 0);
+        pipeline.shrinkCaches(key -> TileScheduler.getDistanceSq(visTiles, key));
+    }
+
+    /**
+     * @return the visible area in level-0 tile coordinates
+     */
+    private Rect2i getVisibleTiles() {
+        return toTileArea(getVisibleArea(camera, getWidth(), getHeight()), 0);
+    }
+
+    /**
+     * Picks the pyramid level that matches the zoom factor. The tile
+     * images are never downscaled by more than a factor of 2 while drawing.
+     * @return the pyramid level in [0..MAX_LEVEL]
+     */
+    private int getVisibleLevel() {
+        double level = -Math.log(camera.getZoom()) / Math.log(2);
+
+        // add a small epsilon to compensate for rounding errors
+        return TeraMath.clamp((int) Math.floor(level + 1e-6), 0, TilePipeline.MAX_LEVEL);
     }
 
     // TODO: consider moving this to Camera (default method?)
@@ -292,17 +580,80 @@ public final class Viewer extends JComponent implements AutoCloseable {
         return visWorld;
     }
 
-    private static Rect2i toChunkArea(Rect2i area) {
-        int chunkMinX = IntMath.divide(area.minX(), TILE_SIZE_X, RoundingMode.FLOOR);
-        int chunkMinZ = IntMath.divide(area.minY(), TILE_SIZE_Y, RoundingMode.FLOOR);
+    /**
+     * Adds the area of a tile to the dirty area. It is repainted with the next repaint
+     * interval, so that tiles that complete at the same time are repainted together.
+     * This method is thread-safe.
+     * @param key the tile that has changed
+     */
+    private void markDirty(TileKey key) {
+        int sizeX = TILE_SIZE_X << key.getLevel();
+        int sizeY = TILE_SIZE_Y << key.getLevel();
+        Rectangle area = new Rectangle(key.getX() * sizeX, key.getY() * sizeY, sizeX, sizeY);
+
+        synchronized (dirtyArea) {
+            if (dirtyArea.isEmpty()) {
+                dirtyArea.setBounds(area);
+                repaintTimer.restart();
+            } else {
+                dirtyArea.add(area);
+            }
+        }
+    }
+
+    /**
+     * Converts the dirty area to screen coordinates and repaints it. Called on the EDT.
+     */
+    private void repaintDirtyArea() {
+        Rectangle area;
+        synchronized (dirtyArea) {
+            area = new Rectangle(dirtyArea);
+            dirtyArea.setSize(0, 0);
+        }
+
+        // the back buffer needs to be updated, too
+        if (bufferDirtyArea.isEmpty()) {
+            bufferDirtyArea.setBounds(area);
+        } else {
+            bufferDirtyArea.add(area);
+        }
+
+        Rect2i visWorld = getVisibleArea(camera, getWidth(), getHeight());
+        float zoom = camera.getZoom();
+        int originX = TeraMath.floorToInt(visWorld.minX() * zoom);
+        int originY = TeraMath.floorToInt(visWorld.minY() * zoom);
+        repaint(toScreenArea(area, originX, originY));
+    }
+
+    /**
+     * @param area an area in world coordinates
+     * @param originX the screen origin in world pixels
+     * @param originY the screen origin in world pixels
+     * @return the screen area that covers the world area
+     */
+    private Rectangle toScreenArea(Rectangle area, int originX, int originY) {
+        float zoom = camera.getZoom();
+        int minX = TeraMath.floorToInt(area.x * zoom) - originX;
+        int minY = TeraMath.floorToInt(area.y * zoom) - originY;
+        int maxX = (int) Math.ceil((area.x + area.width) * zoom) - originX;
+        int maxY = (int) Math.ceil((area.y + area.height) * zoom) - originY;
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    private static Rect2i toTileArea(Rect2i area, int level) {
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
 
-        int chunkMaxX = IntMath.divide(area.maxX(), TILE_SIZE_X, RoundingMode.CEILING);
-        int chunkMaxZ = IntMath.divide(area.maxY(), TILE_SIZE_Y, RoundingMode.CEILING);
+        int chunkMinX = IntMath.divide(area.minX(), sizeX, RoundingMode.FLOOR);
+        int chunkMinZ = IntMath.divide(area.minY(), sizeY, RoundingMode.FLOOR);
+
+        int chunkMaxX = IntMath.divide(area.maxX(), sizeX, RoundingMode.CEILING);
+        int chunkMaxZ = IntMath.divide(area.maxY(), sizeY, RoundingMode.CEILING);
 
         return Rect2i.createFromMinAndMax(chunkMinX, chunkMinZ, chunkMaxX, chunkMaxZ);
     }
 
-    private void drawTiles(Graphics2D g, Rect2i visChunks) {
+    private void drawTiles(Graphics2D g, Rect2i visTiles, int level) {
 
         Object hint;
 
@@ -315,130 +666,400 @@ public final class Viewer extends JComponent implements AutoCloseable {
         }
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, hint);
 
-        for (int z = visChunks.minY(); z < visChunks.maxY(); z++) {
-            for (int x = visChunks.minX(); x < visChunks.maxX(); x++) {
-                Vector2i pos = new Vector2i(x, z);
-                BufferedImage image = imageCache.getUnchecked(pos);
-                g.drawImage(image, x * TILE_SIZE_X, z * TILE_SIZE_Y, null);
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
+
+        int current = pipeline.getGeneration();
+
+        // tiles are looked up by packed keys - up-to-date tiles are drawn without any allocations.
+        // Only the memory cache is used here - the tile tasks load images from the off-heap store and the disk.
+        for (int z = visTiles.minY(); z < visTiles.maxY(); z++) {
+            for (int x = visTiles.minX(); x < visTiles.maxX(); x++) {
+                TileImage tile = pipeline.getMemoryImage(TileKey.pack(level, x, z));
+                if (tile == null || tile.getGeneration() < current) {
+                    schedule(new TileKey(level, x, z));
+                }
+                if (tile != null) {
+                    g.drawImage(tile.getImage(), x * sizeX, z * sizeY, sizeX, sizeY, null);
+                } else if (!drawPreview(g, level, x, z)) {
+                    g.drawImage(dummyImg, x * sizeX, z * sizeY, sizeX, sizeY, null);
+                }
             }
         }
 
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
     }
 
-    private void drawTooltip(Graphics2D g, Rect2i area) {
-        Point curPos = curPosListener.getCursorPosition();
+    /**
+     * Draws the matching part of a cached tile of a higher pyramid level as a placeholder
+     * for a missing tile. If there is none, a coarse preview tile is scheduled unless
+     * the tile is at the highest pyramid level already. The full-resolution tile is
+     * processed after all previews.
+     * @param g the graphics context in world coordinates
+     * @param level the pyramid level of the missing tile
+     * @param x the tile x coordinate at that level
+     * @param z the tile z coordinate at that level
+     * @return true if a placeholder was drawn
+     */
+    private boolean drawPreview(Graphics2D g, int level, int x, int z) {
+        int sizeX = TILE_SIZE_X << level;
+        int sizeY = TILE_SIZE_Y << level;
+
+        for (int up = 1; level + up <= TilePipeline.MAX_LEVEL; up++) {
+            TileImage coarse = pipeline.getMemoryImage(TileKey.pack(level + up, x >> up, z >> up));
+            if (coarse != null) {
+                int mask = (1 << up) - 1;
+                int partX = TILE_SIZE_X >> up;
+                int partY = TILE_SIZE_Y >> up;
+                int sx = (x & mask) * partX;
+                int sy = (z & mask) * partY;
+                g.drawImage(coarse.getImage(), x * sizeX, z * sizeY, (x + 1) * sizeX, (z + 1) * sizeY,
+                        sx, sy, sx + partX, sy + partY, null);
+                return true;
+            }
+        }
 
-        if (curPos != null) {
-            int wx = area.minX() + TeraMath.floorToInt(curPos.x / camera.getZoom());
-            int wy = area.minY() + TeraMath.floorToInt(curPos.y / camera.getZoom());
-
-            int tileX = IntMath.divide(wx, TILE_SIZE_X, RoundingMode.FLOOR);
-            int tileY = IntMath.divide(wy, TILE_SIZE_Y, RoundingMode.FLOOR);
-
-            Vector2i tilePos = new Vector2i(tileX, tileY);
-            Region region = regionCache.getUnchecked(tilePos);
-
-            StringBuffer sb = new StringBuffer();
-            for (FacetLayer layer : facetLayers) {
-                if (layer.isVisible()) {
-                    try {
-                        String layerText = layer.getWorldText(region, wx, wy);
-                        if (layerText != null) {
-                            sb.append("\n").append(layerText);
+        int up = Math.min(PREVIEW_LEVELS, TilePipeline.MAX_LEVEL - level);
+        if (up > 0) {
+            TileKey previewKey = new TileKey(level + up, x >> up, z >> up);
+            if (scheduledTiles.add(previewKey)) {
+                submit(previewKey, false, true);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Schedules tiles that are about to become visible when the camera keeps moving.
+     * The lookahead is limited to the tile margin, so the tiles are not dropped
+     * immediately by the scheduler.
+     * @param visWorld the visible area in world coordinates
+     * @param visTiles the visible tiles at the given level
+     * @param level the visible pyramid level
+     */
+    private void prefetchTiles(Rect2i visWorld, Rect2i visTiles, int level) {
+        int budget = prefetchBudget - generationScheduler.getPendingSpeculativeTasks()
+                - rasterScheduler.getPendingSpeculativeTasks();
+        ImmutableVector2f velocity = velocityTracker.getVelocity();
+        if (budget <= 0 || (velocity.getX() == 0 && velocity.getY() == 0)) {
+            return;
+        }
+
+        int maxLeadX = TILE_MARGIN * TILE_SIZE_X << level;
+        int maxLeadY = TILE_MARGIN * TILE_SIZE_Y << level;
+        int leadX = TeraMath.clamp((int) (velocity.getX() * PREFETCH_LOOKAHEAD), -maxLeadX, maxLeadX);
+        int leadY = TeraMath.clamp((int) (velocity.getY() * PREFETCH_LOOKAHEAD), -maxLeadY, maxLeadY);
+
+        Rect2i aheadWorld = Rect2i.createFromMinAndSize(visWorld.minX() + leadX, visWorld.minY() + leadY,
+                visWorld.width(), visWorld.height());
+        Rect2i aheadTiles = toTileArea(aheadWorld, level);
+
+        // keys are created only for tiles that need to be rendered
+        int current = pipeline.getGeneration();
+        List<TileKey> candidates = null;
+        for (int z = aheadTiles.minY(); z < aheadTiles.maxY(); z++) {
+            for (int x = aheadTiles.minX(); x < aheadTiles.maxX(); x++) {
+                boolean visible = x >= visTiles.minX() && x < visTiles.maxX()
+                               && z >= visTiles.minY() && z < visTiles.maxY();
+                if (!visible) {
+                    TileImage cached = pipeline.getMemoryImage(TileKey.pack(level, x, z));
+                    if (cached == null || cached.getGeneration() < current) {
+                        if (candidates == null) {
+                            candidates = new ArrayList<>();
                         }
-                    } catch (Exception e) {
-                        sb.append("\n<failed>");
+                        candidates.add(new TileKey(level, x, z));
                     }
                 }
             }
+        }
+
+        if (candidates == null) {
+            return;
+        }
+
+        // start with the tiles that will become visible first
+        Rect2i visArea = getVisibleTiles();
+        candidates.sort(Comparator.comparingDouble(key -> TileScheduler.getDistanceSq(visArea, key)));
+
+        for (TileKey key : candidates) {
+            if (budget == 0) {
+                break;
+            }
+            if (scheduledTiles.add(key)) {
+                submit(key, true, false);
+                budget--;
+            }
+        }
+    }
 
-            String tooltip = String.format("%d / %d%s", wx, wy, sb.toString());
+    private void drawTooltip(Graphics2D g, int originX, int originY) {
+        Point curPos = curPosListener.getCursorPosition();
+
+        if (curPos != null) {
+            int wx = TeraMath.floorToInt((curPos.x + originX) / camera.getZoom());
+            int wy = TeraMath.floorToInt((curPos.y + originY) / camera.getZoom());
+
+            int current = pipeline.getGeneration();
+            String tooltip = lastTooltip;
+            if (tooltip == null || !lastTooltipKey.matches(wx, wy, current)) {
+                TooltipKey key = new TooltipKey(wx, wy, current);
+                String text = tooltipCache.getIfPresent(key);
+                if (text == null) {
+                    requestTooltip(key);
+                    tooltip = String.format("%d / %d\ncomputing\u2026", wx, wy);
+                    lastTooltip = null;
+                } else {
+                    tooltip = String.format("%d / %d%s", wx, wy, text);
+                    lastTooltipKey = key;
+                    lastTooltip = tooltip;
+                }
+            }
             Tooltip.draw(g, curPos.x, curPos.y, tooltip);
         }
     }
 
-    private Region createRegion(Vector2i chunkPos) {
+    /**
+     * Submits a tooltip query for the given cell, unless it has been requested already.
+     * Queries that are superseded by a newer cursor position before they run are skipped.
+     * @param key the tooltip key
+     */
+    private void requestTooltip(TooltipKey key) {
+        if (key.equals(pendingTooltip.getAndSet(key))) {
+            return;
+        }
 
-        int vertChunks = 4; // 4 chunks high (relevant for trees, etc)
+        tooltipExecutor.execute(() -> {
+            if (!key.equals(pendingTooltip.get())) {
+                return;
+            }
+            String text;
+            try {
+                text = getTooltipText(key.wx, key.wy);
+            } catch (RuntimeException e) {
+                logger.warn("Could not compute tooltip at {}/{}", key.wx, key.wy, e);
+                text = "\n<failed>";
+            }
+            tooltipCache.put(key, text);
+            pendingTooltip.compareAndSet(key, null);
+            repaint();
+        });
+    }
+
+    /**
+     * Retrieves the world text of all visible layers - this blocks until the region is available.
+     * @param wx the world x coordinate
+     * @param wy the world y coordinate
+     * @return the tooltip text, one line per layer (each with a leading line break)
+     */
+    private String getTooltipText(int wx, int wy) {
+        int tileX = IntMath.divide(wx, TILE_SIZE_X, RoundingMode.FLOOR);
+        int tileY = IntMath.divide(wy, TILE_SIZE_Y, RoundingMode.FLOOR);
 
-        int minX = chunkPos.x * TILE_SIZE_X;
-        int minZ = chunkPos.y * TILE_SIZE_Y;
-        int height = vertChunks * ChunkConstants.SIZE_Y;
-        Region3i area3d = Region3i.createFromMinAndSize(new Vector3i(minX, 0, minZ), new Vector3i(TILE_SIZE_X, height, TILE_SIZE_Y));
-        World world = worldGen.getWorld();
+        Region region = pipeline.getFullRegion(tileX, tileY);
 
-        // The region needs to be thread-safe, since the rendering of the tooltip
-        // might access Region.getFacet() at the same time as a thread from the thread pool
-        // that uses it to render to a BufferedImage.
-        // This is often irrelevant, but composed facets such as Perlin's surface height facet,
-        // which consists of the ground layer plus hills and mountains plus rivers
-        // the method could return a partly created facet if accessed in parallel.
-        Region region = new ThreadSafeRegion(world.getWorldData(area3d));
+        StringBuilder sb = new StringBuilder();
+        for (FacetLayer layer : facetLayers) {
+            if (layer.isVisible()) {
+                try {
+                    String layerText = layer.getWorldText(region, wx, wy);
+                    if (layerText != null) {
+                        sb.append("\n").append(layerText);
+                    }
+                } catch (Exception e) {
+                    sb.append("\n<failed>");
+                }
+            }
+        }
+        return sb.toString();
+    }
 
-        return region;
+    /**
+     * Called whenever a facet layer configuration changes.
+     * All cached tiles become outdated. Tiles that are already scheduled
+     * pick up the new configuration when they are run.
+     */
+    private void updateImageCache() {
+        for (TileKey key : pipeline.getOutdatedTiles()) {
+            schedule(key);
+        }
     }
 
     /**
-     * Called whenever a facet layer configuration changes
+     * Schedules a tile for rendering unless it is already scheduled
+     * @param key the tile key
      */
-    void updateImageCache() {
-        workQueue.clear();
+    private void schedule(TileKey key) {
+        if (scheduledTiles.add(key)) {
+            submit(key, false, false);
+        }
+    }
 
-        // shuffle the order of new tasks
-        // If the queue is cleared repeatedly before all tasks are run
-        // some tiles will never be updated otherwise
-        List<Vector2i> inCache = new ArrayList<>(imageCache.asMap().keySet());
-        Collections.shuffle(inCache);
+    /**
+     * Tiles whose facets are available already skip the generation stage. This is the
+     * case after most layer config changes, so re-rendering does not have to wait for
+     * the generation of other tiles.
+     * @param key the tile key
+     * @param speculative true if the tile is not visible yet
+     * @param preview true if the tile is a coarse placeholder for tiles of the visible level
+     */
+    private void submit(TileKey key, boolean speculative, boolean preview) {
+        if (pipeline.isGenerated(key)) {
+            rasterScheduler.execute(new RasterizeTask(key, speculative, preview, pipeline.getGeneration(), null, false));
+        } else {
+            generationScheduler.execute(new GenerateTask(key, speculative, preview));
+        }
+    }
 
-        for (Vector2i pos : inCache) {
-            threadPool.execute(new UpdateImageCache(pos));
+    private void onDropped(TileTask task) {
+        if (task instanceof RasterizeTask) {
+            ((RasterizeTask) task).releaseHandoff();
         }
+        scheduledTiles.remove(task.getKey());
+    }
+
+    private void onFailure(TileKey key, Exception e) {
+        logger.error("Could not rasterize tile {}", key, e);
+        pipeline.putImage(key, failedImg, pipeline.getGeneration());
+        scheduledTiles.remove(key);
+        markDirty(key);
     }
 
     /**
-     * Note: this method must be thread-safe!
-     * @param region the thread-safe region
-     * @return an image of that region
+     * The first stage: generates the region and the facets of a tile
+     * and hands it over to the raster stage. Up-to-date tiles that are stored
+     * off-heap or on disk are loaded instead.
      */
-    BufferedImage rasterize(Region region) {
+    private class GenerateTask extends TileTask {
 
-        Vector3i extent = region.getRegion().size();
-        int width = extent.x;
-        int height = extent.z;
+        public GenerateTask(TileKey key, boolean speculative, boolean preview) {
+            super(key, speculative, preview);
+        }
 
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = image.createGraphics();
+        @Override
+        public void run() {
+            pipeline.getMetrics().getTimer(PipelineMetrics.QUEUE).recordSince(getCreationTime());
+            TileKey key = getKey();
+            // the region belongs to the config generation before it was retrieved
+            int stamp = pipeline.getGeneration();
+
+            // the event dispatch thread looks up the memory cache only - stored images are loaded here
+            TileImage stored = pipeline.getCachedImage(key);
+            if (stored != null) {
+                markDirty(key);
+                if (stored.getGeneration() == stamp) {
+                    scheduledTiles.remove(key);
+                    return;
+                }
+            }
 
-        for (FacetLayer layer : facetLayers) {
-            if (layer.isVisible()) {
-                layer.render(image, region);
+            TileRegion region;
+            try {
+                region = pipeline.generate(key);
+            } catch (Exception e) {
+                onFailure(key, e);
+                return;
+            }
+
+            try {
+                // wait until the raster stage can take more tiles
+                handoffPermits.acquire();
+            } catch (InterruptedException e) {
+                // the viewer is shutting down
+                Thread.currentThread().interrupt();
+                return;
             }
+            rasterScheduler.execute(new RasterizeTask(key, isSpeculative(), isPreview(), stamp, region, true));
         }
-        g.dispose();
-        return image;
     }
 
-    private class UpdateImageCache implements Runnable {
-
-        private final Vector2i pos;
+    /**
+     * The second stage: renders the facet layers of a tile and composes them.
+     */
+    private class RasterizeTask extends TileTask {
+
+        private final int stamp;
+        private final TileRegion region;
+        private final AtomicBoolean holdsPermit;
+
+        /**
+         * @param key the tile key
+         * @param speculative true if the tile is not visible yet
+         * @param preview true if the tile is a coarse placeholder
+         * @param stamp the config generation to render - it must not be newer than the region
+         * @param region the generated region or <code>null</code>
+         * @param handoff true if the task was handed over from the generation stage
+         */
+        public RasterizeTask(TileKey key, boolean speculative, boolean preview, int stamp, TileRegion region, boolean handoff) {
+            super(key, speculative, preview);
+            this.stamp = stamp;
+            this.region = region;
+            this.holdsPermit = new AtomicBoolean(handoff);
+        }
 
-        public UpdateImageCache(Vector2i pos) {
-            this.pos = pos;
+        void releaseHandoff() {
+            if (holdsPermit.compareAndSet(true, false)) {
+                handoffPermits.release();
+            }
         }
 
         @Override
         public void run() {
-            Region region = regionCache.getUnchecked(pos);
+            releaseHandoff();
+            pipeline.getMetrics().getTimer(PipelineMetrics.RASTER_QUEUE).recordSince(getCreationTime());
+            TileKey key = getKey();
             BufferedImage image;
             try {
-                image = rasterize(region);
+                image = pipeline.renderTile(key, stamp, region);
             } catch (Exception e) {
-                logger.error("Could not rasterize tile {}", pos, e);
-                image = failedImg;
+                onFailure(key, e);
+                return;
             }
-            imageCache.put(pos, image);
-            repaint();
+
+            if (image == null || stamp != pipeline.getGeneration()) {
+                // the config has changed while rendering - discard the result and try again
+                submit(key, isSpeculative(), isPreview());
+                return;
+            }
+
+            pipeline.putImage(key, image, stamp);
+            scheduledTiles.remove(key);
+            markDirty(key);
+        }
+    }
+
+    /**
+     * Identifies a tooltip by world cell and the pipeline generation it was computed for.
+     */
+    private static final class TooltipKey {
+        private final int wx;
+        private final int wy;
+        private final int generation;
+
+        TooltipKey(int wx, int wy, int generation) {
+            this.wx = wx;
+            this.wy = wy;
+            this.generation = generation;
+        }
+
+        boolean matches(int otherWx, int otherWy, int otherGeneration) {
+            return wx == otherWx && wy == otherWy && generation == otherGeneration;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(wx, wy, generation);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof TooltipKey)) {
+                return false;
+            }
+            TooltipKey other = (TooltipKey) obj;
+            return wx == other.wx && wy == other.wy && generation == other.generation;
         }
     }
 }
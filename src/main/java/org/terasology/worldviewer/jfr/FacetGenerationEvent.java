@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The computation of a facet, including all facets it depends on that were not known yet.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.FacetGeneration")
+@Label("Facet Generation")
+@Description("Computes a world facet of a region")
+@Category({"WorldViewer", "World Generation"})
+public class FacetGenerationEvent extends Event {
+
+    @Label("Facet")
+    private final Class<?> facetClass;
+
+    @Label("Min X")
+    @Description("The smallest x coordinate of the region in blocks")
+    private final int minX;
+
+    @Label("Min Z")
+    @Description("The smallest z coordinate of the region in blocks")
+    private final int minZ;
+
+    @Label("Size X")
+    private final int sizeX;
+
+    @Label("Size Z")
+    private final int sizeZ;
+
+    /**
+     * @param facetClass the facet class
+     * @param minX the smallest x coordinate of the region in blocks
+     * @param minZ the smallest z coordinate of the region in blocks
+     * @param sizeX the size of the region along the x axis in blocks
+     * @param sizeZ the size of the region along the z axis in blocks
+     */
+    public FacetGenerationEvent(Class<?> facetClass, int minX, int minZ, int sizeX, int sizeZ) {
+        this.facetClass = facetClass;
+        this.minX = minX;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.worldviewer.jfr.TileCacheEvent.Action;
+
+/**
+ * Creates the custom flight recorder events. The build targets Java 8, which does not
+ * necessarily provide <code>jdk.jfr</code>. If it is missing, no event classes are loaded
+ * and all methods return no-op spans.
+ * @author Martin Steiger
+ */
+public final class JfrEvents {
+
+    /**
+     * A duration event that has begun
+     */
+    public interface Span {
+
+        /**
+         * A span that does nothing
+         */
+        Span NONE = () -> { };
+
+        /**
+         * Ends the event and commits it to the recording
+         */
+        void end();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrEvents.class);
+
+    private static final boolean AVAILABLE = isJfrPresent();
+
+    private JfrEvents() {
+        // no instances
+    }
+
+    private static boolean isJfrPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            logger.info("Flight recorder API not available - no custom events are emitted");
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the flight recorder API is available
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param retainedFacets the number of facets that were taken from an earlier region
+     * @return the running event
+     */
+    public static Span regionCreation(int level, int tileX, int tileY, int retainedFacets) {
+        return AVAILABLE ? Factory.regionCreation(level, tileX, tileY, retainedFacets) : Span.NONE;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param generation the config generation that is rendered
+     * @return the running event
+     */
+    public static Span tileRender(int level, int tileX, int tileY, int generation) {
+        return AVAILABLE ? Factory.tileRender(level, tileX, tileY, generation) : Span.NONE;
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param layer the layer name
+     * @param facetClass the facet class of the layer
+     * @return the running event
+     */
+    public static Span layerRender(int level, int tileX, int tileY, String layer, Class<?> facetClass) {
+        return AVAILABLE ? Factory.layerRender(level, tileX, tileY, layer, facetClass) : Span.NONE;
+    }
+
+    /**
+     * @param facetClass the facet class
+     * @param minX the smallest x coordinate of the region in blocks
+     * @param minZ the smallest z coordinate of the region in blocks
+     * @param sizeX the size of the region along the x axis in blocks
+     * @param sizeZ the size of the region along the z axis in blocks
+     * @return the running event
+     */
+    public static Span facetGeneration(Class<?> facetClass, int minX, int minZ, int sizeX, int sizeZ) {
+        return AVAILABLE ? Factory.facetGeneration(facetClass, minX, minZ, sizeX, sizeZ) : Span.NONE;
+    }
+
+    /**
+     * Frames are painted often, so no event instance is created unless the event type is recorded.
+     * @param level the visible pyramid level
+     * @param zoom the camera zoom
+     * @param visibleTiles the number of visible tiles
+     * @return the running event
+     */
+    public static Span paint(int level, float zoom, int visibleTiles) {
+        return AVAILABLE ? Factory.paint(level, zoom, visibleTiles) : Span.NONE;
+    }
+
+    /**
+     * Cache accesses are frequent, so no event instance is created unless the event type is recorded.
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param cache the cache name
+     * @param hit true if the tile was found
+     */
+    public static void cacheAccess(int level, int tileX, int tileY, String cache, boolean hit) {
+        if (AVAILABLE) {
+            Factory.cacheAccess(level, tileX, tileY, cache, hit);
+        }
+    }
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param cache the cache name
+     */
+    public static void cacheEviction(int level, int tileX, int tileY, String cache) {
+        if (AVAILABLE) {
+            Factory.cacheEviction(level, tileX, tileY, cache);
+        }
+    }
+
+    /**
+     * The only class that refers to the event classes - it is loaded only if the API is available
+     */
+    private static final class Factory {
+
+        static Span regionCreation(int level, int tileX, int tileY, int retainedFacets) {
+            RegionCreationEvent event = new RegionCreationEvent(level, tileX, tileY, retainedFacets);
+            event.begin();
+            return event::commit;
+        }
+
+        static Span tileRender(int level, int tileX, int tileY, int generation) {
+            TileRenderEvent event = new TileRenderEvent(level, tileX, tileY, generation);
+            event.begin();
+            return event::commit;
+        }
+
+        static Span layerRender(int level, int tileX, int tileY, String layer, Class<?> facetClass) {
+            LayerRenderEvent event = new LayerRenderEvent(level, tileX, tileY, layer, facetClass);
+            event.begin();
+            return event::commit;
+        }
+
+        static Span facetGeneration(Class<?> facetClass, int minX, int minZ, int sizeX, int sizeZ) {
+            FacetGenerationEvent event = new FacetGenerationEvent(facetClass, minX, minZ, sizeX, sizeZ);
+            event.begin();
+            return event::commit;
+        }
+
+        static Span paint(int level, float zoom, int visibleTiles) {
+            if (!PaintEvent.isTypeEnabled()) {
+                return Span.NONE;
+            }
+            PaintEvent event = new PaintEvent(level, zoom, visibleTiles);
+            event.begin();
+            return event::commit;
+        }
+
+        static void cacheAccess(int level, int tileX, int tileY, String cache, boolean hit) {
+            if (TileCacheEvent.isTypeEnabled()) {
+                Action action = hit ? Action.HIT : Action.MISS;
+                new TileCacheEvent(level, tileX, tileY, cache, action).commit();
+            }
+        }
+
+        static void cacheEviction(int level, int tileX, int tileY, String cache) {
+            if (TileCacheEvent.isTypeEnabled()) {
+                new TileCacheEvent(level, tileX, tileY, cache, Action.EVICTION).commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The rasterization of one facet layer into its tile buffer.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.LayerRender")
+@Label("Layer Render")
+@Description("Rasterizes a facet layer into a tile buffer")
+@Category({"WorldViewer", "Tiles"})
+public class LayerRenderEvent extends TileEvent {
+
+    @Label("Layer")
+    private final String layer;
+
+    @Label("Facet")
+    private final Class<?> facetClass;
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param layer the layer name
+     * @param facetClass the facet class of the layer
+     */
+    public LayerRenderEvent(int level, int tileX, int tileY, String layer, Class<?> facetClass) {
+        super(level, tileX, tileY);
+        this.layer = layer;
+        this.facetClass = facetClass;
+    }
+}
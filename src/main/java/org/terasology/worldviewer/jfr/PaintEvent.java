@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A frame that is painted by the viewer on the event dispatch thread.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.Paint")
+@Label("Paint")
+@Description("Paints the map view on the event dispatch thread")
+@Category({"WorldViewer", "Swing"})
+public class PaintEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(PaintEvent.class);
+
+    @Label("Level")
+    private final int level;
+
+    @Label("Zoom")
+    private final float zoom;
+
+    @Label("Visible Tiles")
+    private final int visibleTiles;
+
+    /**
+     * @param level the visible pyramid level
+     * @param zoom the camera zoom factor
+     * @param visibleTiles the number of visible tiles
+     */
+    public PaintEvent(int level, float zoom, int visibleTiles) {
+        this.level = level;
+        this.zoom = zoom;
+        this.visibleTiles = visibleTiles;
+    }
+
+    /**
+     * Frames are painted often, so callers check this before creating an event instance
+     * @return true if the event type is currently recorded
+     */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
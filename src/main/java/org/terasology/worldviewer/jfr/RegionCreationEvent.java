@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The creation of a (lazy) region for a tile. Facets are computed later on.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.RegionCreation")
+@Label("Region Creation")
+@Description("Creates the world region of a tile")
+@Category({"WorldViewer", "World Generation"})
+public class RegionCreationEvent extends TileEvent {
+
+    @Label("Retained Facets")
+    @Description("The number of facets that were kept from an earlier region")
+    private final int retainedFacets;
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param retainedFacets the number of facets that were kept from an earlier region
+     */
+    public RegionCreationEvent(int level, int tileX, int tileY, int retainedFacets) {
+        super(level, tileX, tileY);
+        this.retainedFacets = retainedFacets;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A hit, miss or eviction in one of the tile caches. This is an instant event.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.TileCache")
+@Label("Tile Cache")
+@Description("A hit, miss or eviction in a tile cache")
+@Category({"WorldViewer", "Tiles"})
+@StackTrace(false)
+public class TileCacheEvent extends TileEvent {
+
+    /**
+     * The type of cache access
+     */
+    public enum Action {
+        HIT,
+        MISS,
+        EVICTION
+    }
+
+    private static final EventType TYPE = EventType.getEventType(TileCacheEvent.class);
+
+    @Label("Cache")
+    private final String cache;
+
+    @Label("Action")
+    private final String action;
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param cache the cache name
+     * @param action the type of cache access
+     */
+    public TileCacheEvent(int level, int tileX, int tileY, String cache, Action action) {
+        super(level, tileX, tileY);
+        this.cache = cache;
+        this.action = action.name();
+    }
+
+    /**
+     * Cache accesses are frequent, so callers check this before creating an event instance
+     * @return true if the event type is currently recorded
+     */
+    public static boolean isTypeEnabled() {
+        return TYPE.isEnabled();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * The common base of all events that refer to a tile. The fields
+ * must not be private, because JFR ignores private fields of super classes.
+ * @author Martin Steiger
+ */
+abstract class TileEvent extends Event {
+
+    @Label("Level")
+    final int level;
+
+    @Label("Tile X")
+    final int tileX;
+
+    @Label("Tile Y")
+    final int tileY;
+
+    TileEvent(int level, int tileX, int tileY) {
+        this.level = level;
+        this.tileX = tileX;
+        this.tileY = tileY;
+    }
+}
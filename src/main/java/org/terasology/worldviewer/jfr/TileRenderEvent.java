@@ -0,0 +1,48 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The rendering of a complete tile that was not found in any cache.
+ * @author Martin Steiger
+ */
+@Name("org.terasology.worldviewer.TileRender")
+@Label("Tile Render")
+@Description("Renders all visible layers of a tile")
+@Category({"WorldViewer", "Tiles"})
+public class TileRenderEvent extends TileEvent {
+
+    @Label("Generation")
+    @Description("The layer config generation")
+    private final int generation;
+
+    /**
+     * @param level the pyramid level
+     * @param tileX the tile x coordinate
+     * @param tileY the tile y coordinate
+     * @param generation the layer config generation
+     */
+    public TileRenderEvent(int level, int tileX, int tileY, int generation) {
+        super(level, tileX, tileY);
+        this.generation = generation;
+    }
+}
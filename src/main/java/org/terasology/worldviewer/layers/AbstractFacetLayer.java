@@ -16,6 +16,8 @@
 
 package org.terasology.worldviewer.layers;
 
+import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.util.Collection;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -73,4 +75,9 @@ public abstract class AbstractFacetLayer implements FacetLayer {
     public FacetConfig getConfig() {
         return null;
     }
+
+    @Override
+    public Composite getComposite() {
+        return AlphaComposite.SrcOver;
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.terasology.worldviewer.layers;
 
+import java.awt.Composite;
 import java.awt.image.BufferedImage;
 
 import org.terasology.world.generation.Region;
@@ -36,11 +37,16 @@ public interface FacetLayer  {
 
     /**
      * Renders the content of a facet to an image
-     * @param img the image to render on
+     * @param img the image to render on - an empty ARGB buffer that is owned by this layer
      * @param region the region that provides the data
      */
     void render(BufferedImage img, Region region);
 
+    /**
+     * @return the composite that blends the rendered image onto the layers below
+     */
+    Composite getComposite();
+
     /**
      * Returns a descriptive text for a specific target location
      * @param region the region of interest
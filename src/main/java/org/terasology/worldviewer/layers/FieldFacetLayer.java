@@ -16,26 +16,23 @@
 
 package org.terasology.worldviewer.layers;
 
+import java.awt.Composite;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.math.RoundingMode;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.terasology.math.TeraMath;
 import org.terasology.rendering.nui.Color;
 import org.terasology.rendering.nui.properties.Range;
 import org.terasology.world.generation.Region;
 import org.terasology.world.generation.WorldFacet;
+import org.terasology.world.generation.facets.base.BaseFieldFacet2D;
 import org.terasology.world.generation.facets.base.FieldFacet2D;
 import org.terasology.worldviewer.config.FacetConfig;
+import org.terasology.worldviewer.render.AdditiveComposite;
 
 import com.google.common.base.Stopwatch;
-import com.google.common.math.DoubleMath;
 
 /**
  * TODO Type description
@@ -43,13 +40,25 @@ import com.google.common.math.DoubleMath;
  */
 public class FieldFacetLayer extends AbstractFacetLayer {
 
-    private static final List<Color> GRAYS = IntStream
-            .range(0, 256)
-            .mapToObj(i -> new Color(i, i, i))
-            .collect(Collectors.toList());
-
     private static final Color MISSING = Color.MAGENTA;
 
+    /**
+     * The index of the color for values that are not finite
+     */
+    private static final int MISSING_INDEX = 256;
+
+    /**
+     * Gray values as RGB for all 256 indices, plus the color of missing values
+     */
+    private static final int[] COLORS = new int[MISSING_INDEX + 1];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            COLORS[i] = (i << 16) | (i << 8) | i;
+        }
+        COLORS[MISSING_INDEX] = MISSING.rgba() >>> 8;
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(FieldFacetLayer.class);
 
     private Config config = new Config();
@@ -84,18 +93,24 @@ public class FieldFacetLayer extends AbstractFacetLayer {
         int width = img.getWidth();
         int height = img.getHeight();
 
-        DataBufferInt dataBuffer = (DataBufferInt) img.getRaster().getDataBuffer();
-
-        for (int z = 0; z < height; z++) {
-            for (int x = 0; x < width; x++) {
-                Color col = getColor(facet, x, z);
-                int src = col.rgba() >> 8; // we ignore alpha  | (col.a() << 24);
-                int dst = dataBuffer.getElem(z * width + x);
-                int mix = 0xFF000000;
-                mix |= Math.min(0x0000FF, (dst & 0x0000FF) + (src & 0x0000FF));
-                mix |= Math.min(0x00FF00, (dst & 0x00FF00) + (src & 0x00FF00));
-                mix |= Math.min(0xFF0000, (dst & 0xFF0000) + (src & 0xFF0000));
-                dataBuffer.setElem(z * width + x, mix);
+        int[] pixels = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+
+        // read the config only once, it could change while rendering
+        double offset = config.offset + 0.5;    // rounds half up when truncated
+        double scale = config.scale;
+
+        float[] values = (facet instanceof BaseFieldFacet2D) ? ((BaseFieldFacet2D) facet).getInternal() : null;
+        if (values != null && values.length == width * height) {
+            // the facet data has the same row-major layout as the image
+            for (int i = 0; i < values.length; i++) {
+                pixels[i] = addSaturated(pixels[i], toColor(values[i], offset, scale));
+            }
+        } else {
+            for (int z = 0; z < height; z++) {
+                for (int x = 0; x < width; x++) {
+                    int idx = z * width + x;
+                    pixels[idx] = addSaturated(pixels[idx], toColor(facet.get(x, z), offset, scale));
+                }
             }
         }
 
@@ -104,15 +119,34 @@ public class FieldFacetLayer extends AbstractFacetLayer {
         }
     }
 
-    private Color getColor(FieldFacet2D facet, int x, int z) {
-        double value = facet.get(x, z);
-        if (Double.isFinite(value)) {
-            int round = DoubleMath.roundToInt(config.offset + config.scale * value, RoundingMode.HALF_UP);
-            int idx = TeraMath.clamp(round, 0, 255);
-            return GRAYS.get(idx);
-        } else {
-            return MISSING;
+    /**
+     * @param value the field value
+     * @param offset the offset, including 0.5 for rounding
+     * @param scale the scale factor
+     * @return the RGB color of the value
+     */
+    private static int toColor(float value, double offset, double scale) {
+        if (!Float.isFinite(value)) {
+            return COLORS[MISSING_INDEX];
         }
+        // the cast saturates for very large values
+        int idx = (int) (offset + scale * value);
+        return COLORS[Math.max(0, Math.min(255, idx))];
+    }
+
+    /**
+     * Adds the RGB channels of two colors with saturation, without branches. The channels are added
+     * with their top bits masked out, so they cannot overflow into each other. Channels that overflow
+     * are then set to 0xFF. The result is opaque.
+     * @param dst the destination color
+     * @param src the RGB color to add
+     * @return the sum of both colors
+     */
+    static int addSaturated(int dst, int src) {
+        int sum = ((dst & 0x7F7F7F) + (src & 0x7F7F7F)) ^ ((dst ^ src) & 0x808080);
+        int carry = ((dst & src) | ((dst | src) & ~sum)) & 0x808080;
+        int overflow = (carry << 1) - (carry >>> 7);
+        return 0xFF000000 | ((sum | overflow) & 0xFFFFFF);
     }
 
     @Override
@@ -120,6 +154,14 @@ public class FieldFacetLayer extends AbstractFacetLayer {
         return config.clazz;
     }
 
+    /**
+     * Field values are added to the layers below
+     */
+    @Override
+    public Composite getComposite() {
+        return AdditiveComposite.INSTANCE;
+    }
+
     public double getOffset() {
         return config.offset;
     }
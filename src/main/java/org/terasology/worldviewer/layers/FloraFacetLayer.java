@@ -60,23 +60,9 @@ public class FloraFacetLayer extends AbstractFacetLayer {
             int wz = entry.getKey().getZ();
             Color color = colorFunc.apply(treeGen);
 
+            // RGBA -> ARGB, alpha blending is left to the composite
             int src = color.rgba();
-            int dst = dataBuffer.getElem(wz * width + wx);
-
-            int sr = (src >> 24) & 0xFF;
-            int sg = (src >> 16) & 0xFF;
-            int sb = (src >> 8) & 0xFF;
-            int a = src & 0xFF;
-
-            int dr = (dst >> 16) & 0xFF;
-            int dg = (dst >> 8) & 0xFF;
-            int db = dst & 0xFF;
-
-            int mb = (a * sb + (0xFF - a) * db) / 0xFF;
-            int mg = (a * sg + (0xFF - a) * dg) / 0xFF;
-            int mr = (a * sr + (0xFF - a) * dr) / 0xFF;
-
-            int mix = mb | (mg << 8) | (mr << 16);
+            int mix = (src >>> 8) | (src << 24);
             dataBuffer.setElem(wz * width + wx, mix);
         }
 
@@ -61,7 +61,7 @@ public class NominalFacetLayer<E> extends AbstractFacetLayer {
         for (int z = 0; z < height; z++) {
             for (int x = 0; x < width; x++) {
                 Color src = getColor(facet, x, z);
-                int mix = src.rgba() >> 8;
+                int mix = 0xFF000000 | (src.rgba() >>> 8);
                 dataBuffer.setElem(z * width + x, mix);
             }
         }
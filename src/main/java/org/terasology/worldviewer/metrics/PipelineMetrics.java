@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects latency histograms and throughput counters of the tile pipeline stages.
+ * Stages are created on first use.
+ * @author Martin Steiger
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean, AutoCloseable {
+
+    /**
+     * The time a tile task spends in the work queue of the generation stage
+     */
+    public static final String QUEUE = "Queue wait";
+
+    /**
+     * The time a tile task spends in the work queue of the raster stage
+     */
+    public static final String RASTER_QUEUE = "Raster queue wait";
+
+    /**
+     * The creation of a (lazy) region
+     */
+    public static final String REGION = "Region";
+
+    /**
+     * The complete rendering of a tile, including facets and layers
+     */
+    public static final String TILE = "Tile";
+
+    /**
+     * Painting the viewer on the EDT
+     */
+    public static final String PAINT = "Paint";
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineMetrics.class);
+
+    private static final String OBJECT_NAME = "org.terasology.worldviewer:type=PipelineMetrics,id=";
+
+    /**
+     * Distinguishes the instances of several pipelines (e.g. after the world has been changed)
+     */
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+    private final ConcurrentMap<String, StageTimer> stages = new ConcurrentHashMap<>();
+
+    private ObjectName registeredName;
+
+    /**
+     * @param name the stage name
+     * @return the timer for the stage
+     */
+    public StageTimer getTimer(String name) {
+        return stages.computeIfAbsent(name, StageTimer::new);
+    }
+
+    /**
+     * @param facetClass the facet class
+     * @return the timer for the computation of the facet
+     */
+    public StageTimer getFacetTimer(Class<?> facetClass) {
+        return getTimer("Facet: " + facetClass.getSimpleName());
+    }
+
+    /**
+     * @param layer the layer (its toString() value is used)
+     * @return the timer for the rendering of the layer
+     */
+    public StageTimer getLayerTimer(Object layer) {
+        return getTimer("Layer: " + layer);
+    }
+
+    @Override
+    public List<StageStats> getStages() {
+        List<StageStats> result = new ArrayList<>();
+        for (StageTimer timer : stages.values()) {
+            result.add(timer.getStats());
+        }
+        result.sort(Comparator.comparingDouble(StageStats::getTotal).reversed());
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        for (StageTimer timer : stages.values()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * Registers this instance at the platform MBean server
+     */
+    public synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME + INSTANCE_COUNTER.incrementAndGet());
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            logger.warn("Could not register pipeline metrics at JMX", e);
+        }
+    }
+
+    /**
+     * Unregisters this instance (if registered)
+     */
+    @Override
+    public synchronized void close() {
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                logger.warn("Could not unregister pipeline metrics", e);
+            }
+            registeredName = null;
+        }
+    }
+}
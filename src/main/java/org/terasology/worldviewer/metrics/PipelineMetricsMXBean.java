@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.metrics;
+
+import java.util.List;
+
+/**
+ * The JMX view on {@link PipelineMetrics}
+ * @author Martin Steiger
+ */
+public interface PipelineMetricsMXBean {
+
+    /**
+     * @return the current values of all stages, the most expensive first
+     */
+    List<StageStats> getStages();
+
+    /**
+     * Clears all recorded values
+     */
+    void reset();
+}
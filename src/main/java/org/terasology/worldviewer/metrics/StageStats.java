@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable snapshot of a {@link StageTimer}. All durations are in milliseconds.
+ * @author Martin Steiger
+ */
+public final class StageStats {
+
+    private final String name;
+    private final long count;
+    private final double throughput;
+    private final double mean;
+    private final double total;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+
+    /**
+     * @param name the stage name
+     * @param count the number of recorded durations
+     * @param throughput the number of recorded durations per second
+     * @param mean the mean duration
+     * @param total the sum of all durations
+     * @param p50 the median duration
+     * @param p95 the 95th percentile
+     * @param p99 the 99th percentile
+     */
+    @ConstructorProperties({"name", "count", "throughput", "mean", "total", "p50", "p95", "p99"})
+    public StageStats(String name, long count, double throughput, double mean, double total, double p50, double p95, double p99) {
+        this.name = name;
+        this.count = count;
+        this.throughput = throughput;
+        this.mean = mean;
+        this.total = total;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+}
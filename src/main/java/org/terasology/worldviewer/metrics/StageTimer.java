@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the durations of one stage of the tile pipeline.
+ * @author Martin Steiger
+ */
+public final class StageTimer {
+
+    private final String name;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    private volatile long startTime = System.nanoTime();
+
+    StageTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Records the time that has passed since the given start time
+     * @param startNanos the start time as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the current values
+     */
+    public StageStats getStats() {
+        double seconds = (System.nanoTime() - startTime) * 1e-9;
+        long n = count.sum();
+        double total = totalNanos.sum() * 1e-6;
+        return new StageStats(name, n, n / seconds,
+                (n > 0) ? total / n : 0, total,
+                histogram.getPercentile(0.50) * 1e-6,
+                histogram.getPercentile(0.95) * 1e-6,
+                histogram.getPercentile(0.99) * 1e-6);
+    }
+
+    void reset() {
+        histogram.clear();
+        count.reset();
+        totalNanos.reset();
+        startTime = System.nanoTime();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.render;
+
+import java.awt.Composite;
+import java.awt.CompositeContext;
+import java.awt.RenderingHints;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Adds the color channels of the source to the destination.
+ * The sum is clamped at full intensity, source pixels are
+ * weighted by their alpha value.
+ * @author Martin Steiger
+ */
+public final class AdditiveComposite implements Composite {
+
+    public static final AdditiveComposite INSTANCE = new AdditiveComposite();
+
+    private AdditiveComposite() {
+        // use the shared instance
+    }
+
+    @Override
+    public CompositeContext createContext(ColorModel srcColorModel, ColorModel dstColorModel, RenderingHints hints) {
+        if (isPackedRgb(srcColorModel) && isPackedRgb(dstColorModel)) {
+            return new PackedContext(srcColorModel.hasAlpha());
+        }
+        return new GenericContext(srcColorModel, dstColorModel);
+    }
+
+    private static boolean isPackedRgb(ColorModel cm) {
+        if (!(cm instanceof DirectColorModel) || cm.getTransferType() != DataBuffer.TYPE_INT) {
+            return false;
+        }
+        DirectColorModel dcm = (DirectColorModel) cm;
+        return dcm.getRedMask() == 0xFF0000
+            && dcm.getGreenMask() == 0x00FF00
+            && dcm.getBlueMask() == 0x0000FF
+            && (!dcm.hasAlpha() || dcm.getAlphaMask() == 0xFF000000)
+            && !dcm.isAlphaPremultiplied();
+    }
+
+    static int add(int src, int dst) {
+        int a = src >>> 24;
+        int r = Math.min(0xFF, ((dst >> 16) & 0xFF) + ((src >> 16) & 0xFF) * a / 0xFF);
+        int g = Math.min(0xFF, ((dst >> 8) & 0xFF) + ((src >> 8) & 0xFF) * a / 0xFF);
+        int b = Math.min(0xFF, (dst & 0xFF) + (src & 0xFF) * a / 0xFF);
+        return (dst & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Works directly on the int arrays of INT_RGB and INT_ARGB rasters
+     */
+    private static final class PackedContext implements CompositeContext {
+
+        private final boolean srcHasAlpha;
+
+        PackedContext(boolean srcHasAlpha) {
+            this.srcHasAlpha = srcHasAlpha;
+        }
+
+        @Override
+        public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            int width = Math.min(src.getWidth(), dstIn.getWidth());
+            int height = Math.min(src.getHeight(), dstIn.getHeight());
+
+            int[] srcRow = new int[width];
+            int[] dstRow = new int[width];
+            for (int y = 0; y < height; y++) {
+                src.getDataElements(0, y, width, 1, srcRow);
+                dstIn.getDataElements(0, y, width, 1, dstRow);
+                for (int x = 0; x < width; x++) {
+                    int s = srcHasAlpha ? srcRow[x] : (srcRow[x] | 0xFF000000);
+                    dstRow[x] = add(s, dstRow[x]);
+                }
+                dstOut.setDataElements(0, y, width, 1, dstRow);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            // nothing to do
+        }
+    }
+
+    /**
+     * A slow fallback that converts every pixel through the color models
+     */
+    private static final class GenericContext implements CompositeContext {
+
+        private final ColorModel srcColorModel;
+        private final ColorModel dstColorModel;
+
+        GenericContext(ColorModel srcColorModel, ColorModel dstColorModel) {
+            this.srcColorModel = srcColorModel;
+            this.dstColorModel = dstColorModel;
+        }
+
+        @Override
+        public void compose(Raster src, Raster dstIn, WritableRaster dstOut) {
+            int width = Math.min(src.getWidth(), dstIn.getWidth());
+            int height = Math.min(src.getHeight(), dstIn.getHeight());
+
+            Object srcPixel = null;
+            Object dstPixel = null;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    srcPixel = src.getDataElements(x, y, srcPixel);
+                    dstPixel = dstIn.getDataElements(x, y, dstPixel);
+                    int mix = add(srcColorModel.getRGB(srcPixel), dstColorModel.getRGB(dstPixel));
+                    dstPixel = dstColorModel.getDataElements(mix, dstPixel);
+                    dstOut.setDataElements(x, y, dstPixel);
+                }
+            }
+        }
+
+        @Override
+        public void dispose() {
+            // nothing to do
+        }
+    }
+}
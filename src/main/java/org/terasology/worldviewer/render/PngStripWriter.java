@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.render;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a 24-bit RGB PNG image row by row, so that the full
+ * image never needs to be kept in memory.
+ * @author Martin Steiger
+ */
+public class PngStripWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The max. size of a single IDAT chunk
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final int width;
+    private final int height;
+
+    private final ChunkBuffer idat = new ChunkBuffer();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final DeflaterOutputStream zip = new DeflaterOutputStream(idat, deflater, CHUNK_SIZE);
+
+    private final byte[] row;
+    private int rowsWritten;
+
+    /**
+     * Writes the PNG header
+     * @param out the target stream - it is closed when this writer is closed
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @throws IOException if writing fails
+     */
+    public PngStripWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + width * 3];
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(header);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeByte(8);      // bit depth
+        data.writeByte(2);      // color type: RGB
+        data.writeByte(0);      // compression: deflate
+        data.writeByte(0);      // filter method: adaptive
+        data.writeByte(0);      // no interlace
+
+        this.out.write(SIGNATURE);
+        writeChunk("IHDR", header.toByteArray(), header.size());
+    }
+
+    /**
+     * @param rgb the pixels in packed (A)RGB format, alpha is ignored
+     * @param offset the index of the first pixel
+     * @param scanSize the distance between two rows in the array
+     * @param rows the number of rows to write
+     * @throws IOException if writing fails
+     */
+    public void writeRows(int[] rgb, int offset, int scanSize, int rows) throws IOException {
+        if (rowsWritten + rows > height) {
+            throw new IllegalStateException("Image has only " + height + " rows");
+        }
+
+        for (int y = 0; y < rows; y++) {
+            int start = offset + y * scanSize;
+
+            // filter type "sub" - store the difference to the pixel on the left
+            row[0] = 1;
+            int prev = 0;
+            for (int x = 0; x < width; x++) {
+                int px = rgb[start + x];
+                int idx = 1 + x * 3;
+                row[idx] = (byte) ((px >> 16) - (prev >> 16));
+                row[idx + 1] = (byte) ((px >> 8) - (prev >> 8));
+                row[idx + 2] = (byte) (px - prev);
+                prev = px;
+            }
+            zip.write(row);
+        }
+
+        rowsWritten += rows;
+    }
+
+    /**
+     * @return the number of rows that still need to be written
+     */
+    public int getRemainingRows() {
+        return height - rowsWritten;
+    }
+
+    /**
+     * Completes the image and closes the underlying stream
+     * @throws IOException if writing fails or not all rows have been written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Only " + rowsWritten + " of " + height + " rows have been written");
+            }
+            zip.finish();
+            idat.flushChunk();
+            writeChunk("IEND", new byte[0], 0);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Collects compressed data and writes it as IDAT chunks
+     */
+    private class ChunkBuffer extends OutputStream {
+
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int size;
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == buffer.length) {
+                flushChunk();
+            }
+            buffer[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int pos = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (size == buffer.length) {
+                    flushChunk();
+                }
+                int count = Math.min(remaining, buffer.length - size);
+                System.arraycopy(b, pos, buffer, size, count);
+                size += count;
+                pos += count;
+                remaining -= count;
+            }
+        }
+
+        void flushChunk() throws IOException {
+            if (size > 0) {
+                writeChunk("IDAT", buffer, size);
+                size = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.math.Region3i;
+import org.terasology.math.geom.Vector3i;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.World;
+import org.terasology.world.generation.WorldFacet;
+import org.terasology.worldviewer.layers.AbstractFacetLayer;
+
+/**
+ * Tests {@link SampledRegion}
+ * @author Martin Steiger
+ */
+public class SampledRegionTest {
+
+    private static final int SAMPLES = 16;
+    private static final int SCALE = 8;
+
+    private static final int PIXEL = 0xFF00FF00;
+    private static final int SHAPE = 0xFFFF0000;
+
+    private World world;
+    private Region3i area;
+
+    @Before
+    public void setup() {
+        world = mock(World.class);
+        when(world.getWorldData(any(Region3i.class))).thenAnswer(invocation -> {
+            Region region = mock(Region.class);
+            when(region.getRegion()).thenReturn((Region3i) invocation.getArguments()[0]);
+            return region;
+        });
+
+        int size = SAMPLES * SCALE;
+        area = Region3i.createFromMinAndSize(new Vector3i(-size, 0, 3 * size), new Vector3i(size, 64, size));
+    }
+
+    @Test
+    public void testRows() {
+        SampledRegion region = new SampledRegion(world, area, SCALE);
+        List<ThreadSafeRegion> rows = region.getRows();
+
+        assertEquals(SAMPLES, rows.size());
+        for (int i = 0; i < SAMPLES; i++) {
+            Region3i row = rows.get(i).getRegion();
+            assertEquals(area.minX(), row.minX());
+            assertEquals(area.sizeX(), row.sizeX());
+            assertEquals(area.minZ() + i * SCALE, row.minZ());
+            assertEquals(1, row.sizeZ());
+        }
+    }
+
+    /**
+     * Pixels that are written directly are taken from every n-th block.
+     */
+    @Test
+    public void testRenderPixels() {
+        SampledRegion region = new SampledRegion(world, area, SCALE);
+        BufferedImage img = new BufferedImage(SAMPLES, SAMPLES, BufferedImage.TYPE_INT_ARGB);
+
+        // marks every n-th block of a row with a different color
+        region.render(new TestLayer() {
+            @Override
+            public void render(BufferedImage rowImg, Region row) {
+                for (int x = 0; x < rowImg.getWidth(); x += SCALE) {
+                    rowImg.setRGB(x, 0, PIXEL + x / SCALE);
+                }
+            }
+        }, img);
+
+        for (int z = 0; z < SAMPLES; z++) {
+            for (int x = 0; x < SAMPLES; x++) {
+                assertEquals(PIXEL + x, img.getRGB(x, z));
+            }
+        }
+    }
+
+    /**
+     * Shapes keep their geometry: a diagonal line through the area
+     * is drawn as a diagonal line of the sampled image.
+     */
+    @Test
+    public void testRenderShapes() {
+        SampledRegion region = new SampledRegion(world, area, SCALE);
+        BufferedImage img = new BufferedImage(SAMPLES, SAMPLES, BufferedImage.TYPE_INT_ARGB);
+
+        region.render(new TestLayer() {
+            @Override
+            public void render(BufferedImage rowImg, Region row) {
+                Region3i rowArea = row.getRegion();
+                Graphics2D g = rowImg.createGraphics();
+                g.translate(area.minX() - rowArea.minX(), area.minZ() - rowArea.minZ());
+                g.setColor(new Color(SHAPE, true));
+                g.drawLine(0, 0, area.sizeX(), area.sizeZ());
+                g.dispose();
+            }
+        }, img);
+
+        for (int z = 0; z < SAMPLES; z++) {
+            for (int x = 0; x < SAMPLES; x++) {
+                assertEquals(x == z ? SHAPE : 0, img.getRGB(x, z));
+            }
+        }
+    }
+
+    /**
+     * A layer that fills its image covers the entire sampled image.
+     */
+    @Test
+    public void testRenderFill() {
+        SampledRegion region = new SampledRegion(world, area, SCALE);
+        BufferedImage img = new BufferedImage(SAMPLES, SAMPLES, BufferedImage.TYPE_INT_ARGB);
+
+        region.render(new TestLayer() {
+            @Override
+            public void render(BufferedImage rowImg, Region row) {
+                Graphics2D g = rowImg.createGraphics();
+                g.setColor(new Color(SHAPE, true));
+                g.fillRect(0, 0, rowImg.getWidth(), rowImg.getHeight());
+                g.dispose();
+            }
+        }, img);
+
+        for (int z = 0; z < SAMPLES; z++) {
+            for (int x = 0; x < SAMPLES; x++) {
+                assertEquals(SHAPE, img.getRGB(x, z));
+            }
+        }
+    }
+
+    private abstract static class TestLayer extends AbstractFacetLayer {
+
+        @Override
+        public Class<? extends WorldFacet> getFacetClass() {
+            return WorldFacet.class;
+        }
+
+        @Override
+        public String getWorldText(Region region, int wx, int wy) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.terasology.math.Region3i;
+import org.terasology.world.generation.Facet;
+import org.terasology.world.generation.FacetProvider;
+import org.terasology.world.generation.GeneratingRegion;
+import org.terasology.world.generation.Produces;
+import org.terasology.world.generation.Region;
+import org.terasology.world.generation.Requires;
+import org.terasology.world.generation.Updates;
+import org.terasology.world.generation.WorldFacet;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+/**
+ * Tests {@link FacetDependencyGraph}
+ * @author Martin Steiger
+ */
+public class FacetDependencyGraphTest {
+
+    private final FacetProvider producerA = new ProducerA();
+    private final FacetProvider producerB = new ProducerB();
+    private final FacetProvider updaterB = new UpdaterB();
+    private final FacetProvider producerCD = new ProducerCD();
+
+    private final FacetDependencyGraph graph = new FacetDependencyGraph(
+            Sets.newHashSet(producerA, producerB, updaterB, producerCD));
+
+    @Test
+    public void testRedundantProviders() {
+        assertEquals(ImmutableSet.of(producerA, producerB, updaterB),
+                graph.getRedundantProviders(ImmutableSet.of(FacetA.class, FacetB.class)));
+
+        // all outputs must be retained
+        assertEquals(ImmutableSet.of(producerA),
+                graph.getRedundantProviders(ImmutableSet.of(FacetA.class, FacetC.class)));
+
+        assertTrue(graph.getRedundantProviders(ImmutableSet.of()).isEmpty());
+    }
+
+    /**
+     * The providers of retained facets are added to the processed providers of the region,
+     * so that the region does not run them again when a dirty facet requires them.
+     */
+    @Test
+    public void testSkipProviders() {
+        ProcessingRegion region = new ProcessingRegion();
+        region.processedProviders.add(producerCD);
+
+        assertTrue(graph.skipProviders(region, ImmutableSet.of(FacetA.class)));
+        assertEquals(ImmutableSet.of(producerA, producerCD), region.processedProviders);
+    }
+
+    @Test
+    public void testSkipProvidersUnknownRegion() {
+        assertFalse(graph.skipProviders(new PlainRegion(), ImmutableSet.of(FacetA.class)));
+    }
+
+    private interface FacetA extends WorldFacet {
+        // marker
+    }
+
+    private interface FacetB extends WorldFacet {
+        // marker
+    }
+
+    private interface FacetC extends WorldFacet {
+        // marker
+    }
+
+    private interface FacetD extends WorldFacet {
+        // marker
+    }
+
+    private abstract static class TestProvider implements FacetProvider {
+
+        @Override
+        public void setSeed(long seed) {
+            // not needed
+        }
+
+        @Override
+        public void process(GeneratingRegion region) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Produces(FacetA.class)
+    private static class ProducerA extends TestProvider {
+        // only annotations
+    }
+
+    @Requires(@Facet(FacetA.class))
+    @Produces(FacetB.class)
+    private static class ProducerB extends TestProvider {
+        // only annotations
+    }
+
+    @Updates(@Facet(FacetB.class))
+    private static class UpdaterB extends TestProvider {
+        // only annotations
+    }
+
+    @Produces({FacetC.class, FacetD.class})
+    private static class ProducerCD extends TestProvider {
+        // only annotations
+    }
+
+    /**
+     * Tracks processed providers like the engine's region implementation
+     */
+    private static class ProcessingRegion extends PlainRegion {
+        private final Set<FacetProvider> processedProviders = new HashSet<>();
+    }
+
+    private static class PlainRegion implements Region {
+
+        @Override
+        public <T extends WorldFacet> T getFacet(Class<T> dataType) {
+            return null;
+        }
+
+        @Override
+        public Region3i getRegion() {
+            return null;
+        }
+    }
+}
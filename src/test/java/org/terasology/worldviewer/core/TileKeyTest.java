@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TileKey}
+ * @author Martin Steiger
+ */
+public class TileKeyTest {
+
+    @Test
+    public void testPackUnpack() {
+        int[] coords = {0, 1, -1, 12345, -12345, TileKey.MIN_COORD, TileKey.MAX_COORD};
+        for (int level = 0; level < 4; level++) {
+            for (int x : coords) {
+                for (int y : coords) {
+                    long packed = TileKey.pack(level, x, y);
+                    assertEquals(level, TileKey.levelOf(packed));
+                    assertEquals(x, TileKey.xOf(packed));
+                    assertEquals(y, TileKey.yOf(packed));
+                    assertEquals(new TileKey(level, x, y), TileKey.unpack(packed));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackXTooLarge() {
+        TileKey.pack(0, TileKey.MAX_COORD + 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackYTooSmall() {
+        TileKey.pack(0, 0, TileKey.MIN_COORD - 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackNegativeLevel() {
+        TileKey.pack(-1, 0, 0);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TileMap}
+ * @author Martin Steiger
+ */
+public class TileMapTest {
+
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    @Test
+    public void testPutGetRemove() {
+        TileMap<String> map = new TileMap<>(UNBOUNDED, v -> 1, (k, v) -> { });
+
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-7, "b"));
+        assertEquals("a", map.put(1, "c"));
+
+        assertEquals("c", map.get(1));
+        assertEquals("b", map.get(-7));
+        assertNull(map.get(2));
+        assertEquals(2, map.size());
+
+        assertEquals("c", map.remove(1));
+        assertNull(map.remove(1));
+        assertNull(map.get(1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testReplace() {
+        TileMap<String> map = new TileMap<>(UNBOUNDED, String::length, (k, v) -> { });
+        String a = "a";
+        map.put(5, a);
+
+        assertFalse(map.replace(5, "other", "bb"));
+        assertFalse(map.replace(6, a, "bb"));
+        assertTrue(map.replace(5, a, "bb"));
+        assertEquals("bb", map.get(5));
+    }
+
+    /**
+     * Grows the tables far beyond their initial capacity and removes entries in
+     * random order, comparing every step with a {@link HashMap}.
+     */
+    @Test
+    public void testGrowAndRemoveRandom() {
+        TileMap<Long> map = new TileMap<>(UNBOUNDED, v -> 1, (k, v) -> { });
+        Map<Long, Long> expected = new HashMap<>();
+        Random rng = new Random(1234);
+
+        for (int i = 0; i < 20000; i++) {
+            long key = rng.nextInt(5000) - 2500;
+            if (rng.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = rng.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.size(), map.keys().length);
+        for (long key = -2500; key < 2500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    /**
+     * Removes the first entry of a probe sequence that wraps around the table
+     * end, so the backward shift has to move entries across the boundary.
+     */
+    @Test
+    public void testRemoveWraparound() {
+        TileMap<Long> map = new TileMap<>(UNBOUNDED, v -> 1, (k, v) -> { });
+
+        // all keys share the last slot of the initial table in the first segment
+        long[] keys = findKeys(0, 63, 64, 4);
+        for (long key : keys) {
+            map.put(key, key);
+        }
+
+        assertEquals(Long.valueOf(keys[0]), map.remove(keys[0]));
+        for (int i = 1; i < keys.length; i++) {
+            assertEquals(Long.valueOf(keys[i]), map.get(keys[i]));
+        }
+
+        assertEquals(Long.valueOf(keys[2]), map.remove(keys[2]));
+        assertEquals(Long.valueOf(keys[1]), map.get(keys[1]));
+        assertEquals(Long.valueOf(keys[3]), map.get(keys[3]));
+        assertEquals(2, map.size());
+    }
+
+    /**
+     * Evicts entries whose slots wrap around the table end and checks that
+     * the weight limit holds and every entry is either present or evicted.
+     */
+    @Test
+    public void testEvictWraparound() {
+        List<Long> evicted = new ArrayList<>();
+        // four segments with a weight limit of two each
+        TileMap<Long> map = new TileMap<>(8, v -> 1, (k, v) -> evicted.add(k));
+
+        long[] keys = findKeys(0, 62, 64, 6);
+        for (long key : keys) {
+            map.put(key, key);
+        }
+
+        assertEquals(2, map.size());
+        assertEquals(keys.length - 2, evicted.size());
+        for (long key : keys) {
+            boolean present = map.get(key) != null;
+            assertTrue(present != evicted.contains(key));
+        }
+    }
+
+    @Test
+    public void testEvictionPrefersUnreferenced() {
+        List<Long> evicted = new ArrayList<>();
+        // four segments with a weight limit of three each
+        TileMap<Long> map = new TileMap<>(12, v -> 1, (k, v) -> evicted.add(k));
+
+        long[] keys = findKeys(1, 10, 64, 5);
+        for (int i = 0; i < 4; i++) {
+            map.put(keys[i], (long) i);
+        }
+
+        // all entries were referenced - the clock clears their flags and takes the first one
+        assertEquals(1, evicted.size());
+        assertEquals(Long.valueOf(keys[0]), evicted.get(0));
+
+        // the referenced entry gets a second chance
+        map.get(keys[1]);
+        map.put(keys[4], 4L);
+        assertEquals(2, evicted.size());
+        assertEquals(Long.valueOf(keys[2]), evicted.get(1));
+        assertEquals(Long.valueOf(1), map.get(keys[1]));
+    }
+
+    @Test
+    public void testClear() {
+        List<Long> evicted = new ArrayList<>();
+        TileMap<Long> map = new TileMap<>(UNBOUNDED, v -> 1, (k, v) -> evicted.add(k));
+        for (long key = 0; key < 1000; key++) {
+            map.put(key, key);
+        }
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(5));
+        assertTrue(evicted.isEmpty());
+
+        map.put(5, 5L);
+        assertEquals(Long.valueOf(5), map.get(5));
+    }
+
+    /**
+     * Optimistic readers must find every published entry while a writer
+     * keeps growing the tables.
+     */
+    @Test
+    public void testConcurrentGetDuringGrowth() throws InterruptedException {
+        final int count = 200000;
+        TileMap<Long> map = new TileMap<>(UNBOUNDED, v -> 1, (k, v) -> { });
+        AtomicLong published = new AtomicLong(-1);
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            long seed = t;
+            Thread reader = new Thread(() -> {
+                Random rng = new Random(seed);
+                while (published.get() < count - 1 && failure.get() == null) {
+                    long max = published.get();
+                    if (max >= 0) {
+                        long key = (long) (rng.nextDouble() * (max + 1));
+                        Long value = map.get(key);
+                        if (value == null || value != key) {
+                            failure.compareAndSet(null, "key " + key + " mapped to " + value);
+                        }
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (long key = 0; key < count; key++) {
+            map.put(key, key);
+            published.set(key);
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(count, map.size());
+    }
+
+    /**
+     * Finds keys that are stored in the same segment with the same home slot.
+     * This replicates the hashing of {@link TileMap}.
+     * @param segment the segment index in [0..3]
+     * @param slot the home slot
+     * @param capacity the table capacity
+     * @param count the number of keys
+     * @return the matching keys in ascending order
+     */
+    private static long[] findKeys(int segment, int slot, int capacity, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (long key = 0; found < count; key++) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int seg = (int) (hash >>> 62);
+            int home = (int) (hash >>> 32) & (capacity - 1);
+            if (seg == segment && home == slot) {
+                keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
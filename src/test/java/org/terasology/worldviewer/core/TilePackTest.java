@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TilePack} and the crash recovery of {@link DiskTileCache}
+ * @author Martin Steiger
+ */
+public class TilePackTest {
+
+    private static final int SIZE = 8;
+    private static final int CAPACITY = 16;
+
+    private Path folder;
+    private Path file;
+
+    @Before
+    public void setup() throws IOException {
+        folder = Files.createTempDirectory("tilepack");
+        file = folder.resolve("test.pack");
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            assertTrue(pack.write(new TileKey(2, -3, 5), createImage(7)));
+            assertImage(7, pack.read(new TileKey(2, -3, 5)));
+            assertNull(pack.read(new TileKey(2, 5, -3)));
+        }
+
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            assertEquals(1, pack.getTileCount());
+            assertImage(7, pack.read(new TileKey(2, -3, 5)));
+        }
+    }
+
+    @Test
+    public void testFull() throws IOException {
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            for (int i = 0; i < CAPACITY / 2; i++) {
+                assertTrue(pack.write(new TileKey(0, i, 0), createImage(i)));
+            }
+            assertFalse(pack.write(new TileKey(0, -1, 0), createImage(0)));
+            assertNull(pack.read(new TileKey(0, -1, 0)));
+        }
+    }
+
+    @Test
+    public void testRewriteUsesNewSlot() throws IOException {
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            TileKey key = new TileKey(0, 1, 1);
+            pack.write(key, createImage(1));
+            pack.write(key, createImage(2));
+            assertEquals(2, pack.getTileCount());
+            assertImage(2, pack.read(key));
+        }
+    }
+
+    /**
+     * The pack is reopened without being closed, like after a crash of the application.
+     */
+    @Test
+    public void testReopenWithoutClose() throws IOException {
+        TilePack crashed = new TilePack(file, SIZE, SIZE, CAPACITY);
+        crashed.write(new TileKey(1, 0, 0), createImage(1));
+        crashed.write(new TileKey(1, 0, 1), createImage(2));
+
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            assertImage(1, pack.read(new TileKey(1, 0, 0)));
+            assertImage(2, pack.read(new TileKey(1, 0, 1)));
+        }
+        crashed.close();
+    }
+
+    /**
+     * The tile count in the header can be lost while the table entries are already on disk.
+     * New tiles must not overwrite the data of existing entries.
+     */
+    @Test
+    public void testStaleTileCount() throws IOException {
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            pack.write(new TileKey(0, 0, 0), createImage(1));
+            pack.write(new TileKey(0, 1, 0), createImage(2));
+        }
+
+        writeInt(20, 0);
+
+        try (TilePack pack = new TilePack(file, SIZE, SIZE, CAPACITY)) {
+            assertEquals(2, pack.getTileCount());
+            pack.write(new TileKey(0, 2, 0), createImage(3));
+            assertImage(1, pack.read(new TileKey(0, 0, 0)));
+            assertImage(2, pack.read(new TileKey(0, 1, 0)));
+            assertImage(3, pack.read(new TileKey(0, 2, 0)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testIncompatible() throws IOException {
+        new TilePack(file, SIZE, SIZE, CAPACITY).close();
+        new TilePack(file, SIZE, SIZE, CAPACITY * 2).close();
+    }
+
+    /**
+     * An unreadable pack file is replaced by an empty one.
+     */
+    @Test
+    public void testReplaceGarbage() throws IOException {
+        Files.write(folder.resolve("abc.pack"), new byte[] {1, 2, 3, 4, 5});
+
+        try (DiskTileCache cache = new DiskTileCache(folder, SIZE, SIZE)) {
+            cache.open("abc", 3);
+            TileKey key = new TileKey(0, 4, 4);
+            assertNull(cache.read(3, key));
+            cache.write(3, key, createImage(9));
+            assertImage(9, cache.read(3, key));
+            assertNull(cache.read(4, key));
+        }
+    }
+
+    private void writeInt(long pos, int value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(4);
+            buffer.putInt(0, value);
+            channel.write(buffer, pos);
+        }
+    }
+
+    private static BufferedImage createImage(int seed) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                image.setRGB(x, y, getColor(seed, x, y));
+            }
+        }
+        return image;
+    }
+
+    private static void assertImage(int seed, BufferedImage image) {
+        assertNotNull(image);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(getColor(seed, x, y), image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    private static int getColor(int seed, int x, int y) {
+        return (seed * 0x3F1A7 + x * 0x1F3 + y * 0x7C0001) & 0xFFFFFF;
+    }
+}
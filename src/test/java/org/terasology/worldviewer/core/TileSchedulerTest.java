@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.terasology.math.Rect2i;
+
+/**
+ * Tests {@link TileScheduler}. A single worker is blocked by a first task,
+ * so that all other tasks remain in the queue until it is released.
+ * @author Martin Steiger
+ */
+public class TileSchedulerTest {
+
+    private static final int MARGIN = 1;
+
+    private volatile Rect2i visible = Rect2i.createFromMinAndMax(0, 0, 3, 3);
+    private volatile int level;
+
+    private final List<TileKey> dropped = new CopyOnWriteArrayList<>();
+    private final List<TileKey> processed = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private TileScheduler scheduler;
+
+    @Before
+    public void setup() throws InterruptedException {
+        scheduler = new TileScheduler(1, () -> visible, () -> level, MARGIN, task -> dropped.add(task.getKey()));
+
+        CountDownLatch started = new CountDownLatch(1);
+        scheduler.execute(new TileTask(new TileKey(0, 0, 0), false, false) {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void teardown() {
+        release.countDown();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testOrder() throws InterruptedException {
+        TileKey speculative = new TileKey(0, 2, 2);
+        TileKey far = new TileKey(0, 3, 0);
+        TileKey near = new TileKey(0, 1, 2);
+        TileKey preview = new TileKey(2, 5, 5);
+
+        CountDownLatch done = new CountDownLatch(4);
+        scheduler.execute(new RecordingTask(speculative, true, false, done));
+        scheduler.execute(new RecordingTask(far, false, false, done));
+        scheduler.execute(new RecordingTask(near, false, false, done));
+        scheduler.execute(new RecordingTask(preview, false, true, done));
+
+        assertEquals(4, scheduler.getPendingTasks());
+        assertEquals(1, scheduler.getPendingSpeculativeTasks());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        // previews first, then regular tasks by distance, speculative tasks last
+        assertEquals(Arrays.asList(preview, near, far, speculative), processed);
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void testDropOffscreen() throws InterruptedException {
+        TileKey left = new TileKey(0, 1, 1);
+        TileKey margin = new TileKey(0, 17, 20);
+        TileKey inside = new TileKey(0, 20, 20);
+
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute(new RecordingTask(left, false, false, done));
+        scheduler.execute(new RecordingTask(margin, false, false, done));
+        scheduler.execute(new RecordingTask(inside, false, false, done));
+
+        visible = Rect2i.createFromMinAndMax(18, 18, 21, 21);
+        scheduler.reprioritize();
+
+        assertEquals(Collections.singletonList(left), dropped);
+        assertEquals(2, scheduler.getPendingTasks());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(inside, margin), processed);
+    }
+
+    @Test
+    public void testDropOtherLevels() throws InterruptedException {
+        TileKey lower = new TileKey(0, 1, 1);
+        TileKey current = new TileKey(1, 0, 0);
+        TileKey preview = new TileKey(2, 0, 0);
+        TileKey lowerPreview = new TileKey(0, 2, 2);
+
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.execute(new RecordingTask(lower, false, false, done));
+        scheduler.execute(new RecordingTask(current, false, false, done));
+        scheduler.execute(new RecordingTask(preview, false, true, done));
+        scheduler.execute(new RecordingTask(lowerPreview, false, true, done));
+
+        level = 1;
+        scheduler.reprioritize();
+
+        // previews are kept only if they belong to a higher level
+        assertEquals(new HashSet<>(Arrays.asList(lower, lowerPreview)), new HashSet<>(dropped));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(preview, current), processed);
+    }
+
+    @Test
+    public void testPromoteSpeculative() throws InterruptedException {
+        TileKey regular = new TileKey(0, 12, 12);
+        TileKey ahead = new TileKey(0, 10, 10);
+
+        CountDownLatch done = new CountDownLatch(2);
+        RecordingTask aheadTask = new RecordingTask(ahead, true, false, done);
+        scheduler.execute(new RecordingTask(regular, false, false, done));
+        scheduler.execute(aheadTask);
+
+        visible = Rect2i.createFromMinAndMax(8, 8, 11, 11);
+        scheduler.reprioritize();
+
+        assertFalse(aheadTask.isSpeculative());
+        assertEquals(0, scheduler.getPendingSpeculativeTasks());
+        assertTrue(dropped.isEmpty());
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(ahead, regular), processed);
+    }
+
+    @Test
+    public void testClear() {
+        scheduler.execute(new RecordingTask(new TileKey(0, 1, 1), false, false, new CountDownLatch(1)));
+        scheduler.clear();
+
+        assertEquals(0, scheduler.getPendingTasks());
+        assertTrue(dropped.isEmpty());
+    }
+
+    private class RecordingTask extends TileTask {
+
+        private final CountDownLatch done;
+
+        RecordingTask(TileKey key, boolean speculative, boolean preview, CountDownLatch done) {
+            super(key, speculative, preview);
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            processed.add(getKey());
+            done.countDown();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.layers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the saturated color addition of {@link FieldFacetLayer}
+ * @author Martin Steiger
+ */
+public class FieldFacetLayerTest {
+
+    @Test
+    public void testAddSaturated() {
+        assertEquals(0xFF000000, FieldFacetLayer.addSaturated(0x000000, 0x000000));
+        assertEquals(0xFF102030, FieldFacetLayer.addSaturated(0x080010, 0x082020));
+        assertEquals(0xFFFF8001, FieldFacetLayer.addSaturated(0x7F7F00, 0x800101));
+        assertEquals(0xFFFFFFFF, FieldFacetLayer.addSaturated(0x808080, 0x808080));
+        assertEquals(0xFFFF00FF, FieldFacetLayer.addSaturated(0xFF00FF, 0xFF00FF));
+    }
+
+    /**
+     * Alpha bits of the inputs are ignored and the result is always opaque
+     */
+    @Test
+    public void testAlphaIgnored() {
+        assertEquals(0xFF010203, FieldFacetLayer.addSaturated(0x12010203, 0x00000000));
+        assertEquals(0xFF010203, FieldFacetLayer.addSaturated(0x00000000, 0xAB010203));
+    }
+
+    @Test
+    public void testAddSaturatedRandom() {
+        Random rng = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            int dst = rng.nextInt();
+            int src = rng.nextInt();
+            assertEquals(reference(dst, src), FieldFacetLayer.addSaturated(dst, src));
+        }
+    }
+
+    @Test
+    public void testAddSaturatedChannelBoundaries() {
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                int dst = a << 16 | b << 8 | a;
+                int src = b << 16 | a << 8 | a;
+                assertEquals(reference(dst, src), FieldFacetLayer.addSaturated(dst, src));
+            }
+        }
+    }
+
+    private static int reference(int dst, int src) {
+        int r = Math.min(255, (dst >> 16 & 0xFF) + (src >> 16 & 0xFF));
+        int g = Math.min(255, (dst >> 8 & 0xFF) + (src >> 8 & 0xFF));
+        int b = Math.min(255, (dst & 0xFF) + (src & 0xFF));
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link LatencyHistogram}
+ * @author Martin Steiger
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        // values below the number of sub-buckets have a bucket of their own
+        for (long value = 0; value < 16; value++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            assertEquals(value, histogram.getPercentile(0.5));
+        }
+    }
+
+    @Test
+    public void testNegativeIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(1.0));
+    }
+
+    /**
+     * Every value must be reported within the relative error of its bucket, including
+     * the bucket boundaries at powers of two and the largest possible value.
+     */
+    @Test
+    public void testRelativeError() {
+        for (int exp = 4; exp < 63; exp++) {
+            long pow = 1L << exp;
+            long[] values = {pow - 1, pow, pow + 1, pow + pow / 3, pow * 2 - 1};
+            for (long value : values) {
+                LatencyHistogram histogram = new LatencyHistogram();
+                histogram.record(value);
+                long reported = histogram.getPercentile(0.5);
+                double error = Math.abs(reported - (double) value) / value;
+                assertTrue(value + " reported as " + reported, error < 1.0 / 16);
+            }
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        long reported = histogram.getPercentile(1.0);
+        assertTrue(reported > 0 && (Long.MAX_VALUE - reported) / (double) Long.MAX_VALUE < 1.0 / 16);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getPercentile(0.0), 1000 / 16);
+        assertEquals(50000, histogram.getPercentile(0.5), 50000 / 16);
+        assertEquals(99000, histogram.getPercentile(0.99), 99000 / 16);
+        assertEquals(100000, histogram.getPercentile(1.0), 100000 / 16);
+    }
+
+    @Test
+    public void testClear() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(12345);
+        histogram.clear();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        histogram.record(7);
+        assertEquals(7, histogram.getPercentile(0.5));
+    }
+}
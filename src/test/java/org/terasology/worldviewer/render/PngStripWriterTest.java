@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.worldviewer.render;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PngStripWriter} by decoding the written images with ImageIO
+ * @author Martin Steiger
+ */
+public class PngStripWriterTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // large enough for several IDAT chunks
+        int width = 301;
+        int height = 257;
+        int[] pixels = new int[width * height];
+        Random rng = new Random(5);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = rng.nextInt() & 0xFFFFFF;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PngStripWriter writer = new PngStripWriter(bytes, width, height)) {
+            // uneven strips, including one with a single row
+            int[] strips = {1, 100, 56, 100};
+            int y = 0;
+            for (int rows : strips) {
+                writer.writeRows(pixels, y * width, width, rows);
+                y += rows;
+            }
+            assertEquals(0, writer.getRemainingRows());
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixels[y * width + x], image.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void testScanSizeAndAlpha() throws IOException {
+        // two rows of three pixels in an array of stride 4 with alpha bits set
+        int[] pixels = {
+            0xFF000000, 0x80FF0000, 0x0000FF00, 0x12345678,
+            0xFF0000FF, 0xFFFFFFFF, 0x00808080, 0x12345678};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PngStripWriter writer = new PngStripWriter(bytes, 3, 2)) {
+            writer.writeRows(pixels, 0, 4, 2);
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+        int[] expected = {0x000000, 0xFF0000, 0x00FF00, 0x0000FF, 0xFFFFFF, 0x808080};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], image.getRGB(i % 3, i / 3) & 0xFFFFFF);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingRows() throws IOException {
+        try (PngStripWriter writer = new PngStripWriter(new ByteArrayOutputStream(), 4, 4)) {
+            writer.writeRows(new int[16], 0, 4, 3);
+        }
+    }
+
+    @Test
+    public void testTooManyRows() throws IOException {
+        PngStripWriter writer = new PngStripWriter(new ByteArrayOutputStream(), 4, 2);
+        try {
+            writer.writeRows(new int[12], 0, 4, 3);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        writer.writeRows(new int[8], 0, 4, 2);
+        writer.close();
+    }
+}